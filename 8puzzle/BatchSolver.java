@@ -0,0 +1,138 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Solves many independent boards concurrently on a work-stealing
+// ForkJoinPool. Each board gets its own Solver, optionally limited to a
+// number of expanded nodes and a time budget; boards that run out of
+// budget come back with budgetExceeded() set and no solution. Results are
+// returned in input order, or handed to a listener as they complete.
+//*****************************************************************************
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class BatchSolver {
+    private final ForkJoinPool pool;
+    private final Solver.Mode mode;
+    private final Heuristic heuristic;
+    private final long nodeBudget;
+    private final long timeBudgetNanos;
+
+    // receives each solved board, called from the worker threads
+    public interface Listener {
+        void solved(int index, Board board, Solver solver);
+    }
+
+    // A* with manhattan distance and no budget, one thread per core
+    public BatchSolver() {
+        this(Runtime.getRuntime().availableProcessors(), Solver.Mode.ASTAR,
+                Heuristic.MANHATTAN, 0, 0);
+    }
+
+    // parallelism worker threads solving with mode and heuristic; a board
+    // gives up after nodeBudget expanded nodes or timeBudgetMillis
+    // milliseconds, where 0 means no limit
+    public BatchSolver(int parallelism, Solver.Mode mode, Heuristic heuristic,
+                       long nodeBudget, long timeBudgetMillis) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Null mode input.");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Null heuristic input.");
+        }
+        if (nodeBudget < 0 || timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Negative budget.");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.mode = mode;
+        this.heuristic = heuristic;
+        this.nodeBudget = (nodeBudget == 0) ? Long.MAX_VALUE : nodeBudget;
+        this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+    }
+
+    // solve every board, returning the solvers in input order
+    public List<Solver> solveAll(Iterable<Board> boards) {
+        List<ForkJoinTask<Solver>> tasks = submitAll(boards, null);
+        List<Solver> solvers = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Solver> task : tasks) {
+            solvers.add(task.join());
+        }
+        return solvers;
+    }
+
+    // solve every board, passing each to listener as soon as it is done;
+    // returns once all boards are solved
+    public void solveAll(Iterable<Board> boards, Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Null listener input.");
+        }
+        for (ForkJoinTask<Solver> task : submitAll(boards, listener)) {
+            task.join();
+        }
+    }
+
+    // stop the worker threads once the submitted boards are solved
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private List<ForkJoinTask<Solver>> submitAll(Iterable<Board> boards,
+                                                 final Listener listener) {
+        if (boards == null) {
+            throw new IllegalArgumentException("Null boards input.");
+        }
+        List<ForkJoinTask<Solver>> tasks = new ArrayList<>();
+        for (final Board board : boards) {
+            if (board == null) {
+                throw new IllegalArgumentException("Null board input.");
+            }
+            final int index = tasks.size();
+            tasks.add(pool.submit(() -> {
+                Solver solver = solve(board);
+                if (listener != null) {
+                    listener.solved(index, board, solver);
+                }
+                return solver;
+            }));
+        }
+        return tasks;
+    }
+
+    private Solver solve(Board board) {
+        // the clock starts when a worker picks the board up
+        long deadline = Long.MAX_VALUE;
+        if (timeBudgetNanos > 0) {
+            deadline = System.nanoTime() + timeBudgetNanos;
+        }
+        return new Solver(board, mode, heuristic, nodeBudget, deadline);
+    }
+
+    // solve the slider puzzles in the given files concurrently
+    public static void main(String[] args) {
+        List<Board> boards = new ArrayList<>();
+        for (String filename : args) {
+            In in = new In(filename);
+            int n = in.readInt();
+            int[][] blocks = new int[n][n];
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++)
+                    blocks[i][j] = in.readInt();
+            boards.add(new Board(blocks));
+        }
+
+        BatchSolver batch = new BatchSolver();
+        List<Solver> solvers = batch.solveAll(boards);
+        batch.shutdown();
+        for (int i = 0; i < args.length; i++) {
+            if (!solvers.get(i).isSolvable())
+                StdOut.println(args[i] + ": No solution possible");
+            else
+                StdOut.println(args[i] + ": Minimum number of moves = "
+                        + solvers.get(i).moves());
+        }
+    }
+}
@@ -6,16 +6,30 @@
 // This class implements a board for the game 8/15 puzzle, various methods
 // to check the state of the board and it's proximity to the goal board,
 // and the possible moves from this board.
+//
+// Boards handed out by the public API never change after construction, so
+// once safely published (for example by submitting them to an executor)
+// they can be shared between threads. The only lazily filled field is the
+// cached manhattan distance, and every thread computes the same value for
+// it. Solvers mutate only their own private copies, see copy().
 //*****************************************************************************
 
 
 import java.util.Stack;
 
 public class Board {
-    private char[] blocks;
+    // boards up to 4x4 fit in a single long at 4 bits per tile
+    private static final int PACKED_MAX_DIMENSION = 4;
+    private static final int BITS_PER_TILE = 4;
+    private static final long TILE_MASK = 0xFL;
+
+    private char[] blocks;      // tiles of larger boards; null when packed
+    private long packed;        // tile at position i lives in bits [4i, 4i + 4)
+    private int blank;          // position of the empty space
     private int n;
     private int digitsInN;
     private int manhattan;
+    private long zobrist;       // xor of zobristKey(pos, tile) over all tiles
 
     // construct a board from an n-by-n array of blocks'
     // (where blocks[i][j] = block in row i, column j)
@@ -26,12 +40,20 @@ public class Board {
         }
 
         n = blocks[0].length;
-        this.blocks = new char[n * n];
+        if (n > PACKED_MAX_DIMENSION) {
+            this.blocks = new char[n * n];
+        }
 
         // create defensive, immutable copy of blocks
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
-                this.blocks[xyTo1d(i, j)] = (char) blocks[i][j];
+                int xy = xyTo1d(i, j);
+                if (this.blocks == null) {
+                    packed |= (long) blocks[i][j] << (xy * BITS_PER_TILE);
+                } else {
+                    this.blocks[xy] = (char) blocks[i][j];
+                }
+                if (blocks[i][j] == 0) blank = xy;
             }
         }
 
@@ -42,6 +64,28 @@ public class Board {
             digitsInN++;
         }
         manhattan = Integer.MAX_VALUE;
+        zobrist = calcZobrist();
+    }
+
+    // board sharing the dimension of parent with the given tiles and
+    // empty space, used to build neighbors without going through int[][]
+    private Board(Board parent, long packed, char[] blocks, int blank, long zobrist) {
+        this.n = parent.n;
+        this.digitsInN = parent.digitsInN;
+        this.packed = packed;
+        this.blocks = blocks;
+        this.blank = blank;
+        this.manhattan = Integer.MAX_VALUE;
+        this.zobrist = zobrist;
+    }
+
+    // the n-by-n goal board
+    static Board goal(int n) {
+        int[][] blocks = new int[n][n];
+        for (int i = 0; i < n * n - 1; i++) {
+            blocks[i / n][i % n] = i + 1;
+        }
+        return new Board(blocks);
     }
 
     // board dimension n
@@ -58,8 +102,8 @@ public class Board {
                 // check if element x contains element x + 1
                 // (board starts at 1, board[1] should contain[1]
                 int xy = xyTo1d(i, j);
-                if (blocks[xy] != xy + 1
-                        && blocks[xy] != 0) {
+                int tile = tileAt(xy);
+                if (tile != xy + 1 && tile != 0) {
                     outOfPlace++;
                 }
             }
@@ -78,15 +122,60 @@ public class Board {
 
     private void calcManhattan() {
         int manhattan = 0;
-        for (int i = 0; i < blocks.length; i++) {
-            if (blocks[i] == 0) {
+        for (int i = 0; i < n * n; i++) {
+            int tile = tileAt(i);
+            if (tile == 0) {
                 continue;
             }
-            manhattan += distanceToGoalPos(i, blocks[i]);
+            manhattan += distanceToGoalPos(i, tile);
         }
         this.manhattan = manhattan;
     }
 
+    // tile at one dimensional position pos, 0 for the empty space
+    int tileAt(int pos) {
+        if (blocks == null) {
+            return (int) ((packed >>> (pos * BITS_PER_TILE)) & TILE_MASK);
+        }
+        return blocks[pos];
+    }
+
+    private long calcZobrist() {
+        long zobrist = 0L;
+        for (int i = 0; i < n * n; i++) {
+            int tile = tileAt(i);
+            if (tile != 0) {
+                zobrist ^= zobristKey(i, tile);
+            }
+        }
+        return zobrist;
+    }
+
+    /* Zobrist key of tile sitting at position pos. Instead of a table of
+       random numbers the key is a 64 bit mix (splitmix64's finalizer) of
+       the pair, which works for any board size. Moving a tile from a to b
+       updates the hash with zobrist ^ key(a, tile) ^ key(b, tile).
+     */
+    private static long zobristKey(int pos, int tile) {
+        long z = ((long) pos << 32 | tile) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // zobrist hash of this board once tile moves from position a to b
+    private long zobristAfterMove(int a, int b, int tile) {
+        return zobrist ^ zobristKey(a, tile) ^ zobristKey(b, tile);
+    }
+
+    // packed board with the tiles at positions a and b exchanged
+    private static long swapPacked(long packed, int a, int b) {
+        int shiftA = a * BITS_PER_TILE;
+        int shiftB = b * BITS_PER_TILE;
+        long diff = ((packed >>> shiftA) ^ (packed >>> shiftB)) & TILE_MASK;
+        return packed ^ (diff << shiftA) ^ (diff << shiftB);
+    }
+
     // converts two dimensional array element to one dimensional element
     private int xyTo1d(int i, int j) {
         int oneD = j + n * i;
@@ -128,12 +217,50 @@ public class Board {
         return (this.manhattan == 0);
     }
 
+    /* Can the goal board be reached from this board? Every move swaps the
+       empty space with a tile, which flips the parity of the permutation
+       of the board and of the empty space's distance to its goal corner.
+       So the board is solvable exactly when both parities agree. The
+       permutation parity comes from counting cycles, which is linear in
+       the number of blocks, instead of counting inversions.
+     */
+    public boolean isSolvable() {
+        int size = n * n;
+        boolean[] visited = new boolean[size];
+        int cycles = 0;
+        for (int i = 0; i < size; i++) {
+            if (visited[i]) continue;
+            cycles++;
+            for (int j = i; !visited[j]; j = goalPosition(tileAt(j))) {
+                visited[j] = true;
+            }
+        }
+        int blankDistance = (n - 1 - blank / n) + (n - 1 - blank % n);
+        return (size - cycles) % 2 == blankDistance % 2;
+    }
+
+    // one dimensional goal position of tile, the empty space goes last
+    private int goalPosition(int tile) {
+        return (tile == 0) ? n * n - 1 : tile - 1;
+    }
+
     // a board that is obtained by exchanging any pair of blocks
     public Board twin() {
+        if (blocks == null) {
+            for (int i = 0; i < n * n - 1; i++) {
+                if (tileAt(i) != 0 && tileAt(i + 1) != 0) {
+                    Board twin = new Board(this, swapPacked(packed, i, i + 1), null,
+                            blank, 0L);
+                    twin.zobrist = twin.calcZobrist();
+                    return twin;
+                }
+            }
+        }
+
         // create twin
         Board twin = constructBlocks(blocks);
 
-        for (int i = 0; i < blocks.length; i++) {
+        for (int i = 0; i < blocks.length - 1; i++) {
             if (twin.blocks[i] != 0 && twin.blocks[i + 1] != 0) {
                 char tmp = twin.blocks[i];
                 twin.blocks[i] = twin.blocks[i + 1];
@@ -141,6 +268,7 @@ public class Board {
                 break;
             }
         }
+        twin.zobrist = twin.calcZobrist();
 
         return twin;
     }
@@ -152,21 +280,22 @@ public class Board {
         if (y.getClass() != this.getClass()) return false;
         Board other = (Board) y;
         if (other.n != this.n) return false;
+        if (blocks == null) return this.packed == other.packed;
         for (int i = 0; i < blocks.length; i++) {
             if (this.blocks[i] != other.blocks[i]) return false;
         }
         return true;
     }
 
+    // hash code consistent with equals, from the incrementally kept zobrist hash
+    public int hashCode() {
+        return (int) (zobrist ^ (zobrist >>> 32));
+    }
+
     // all neighboring boards
     public Iterable<Board> neighbors() {
         Stack<Board> neighborBoards = new Stack<>();
-        int emptySpacePos = 0;
-
-        // find position of empty space
-        for (int i = 0; i < blocks.length; i++) {
-            if (blocks[i] == 0) emptySpacePos = i;
-        }
+        int emptySpacePos = blank;
 
         // add board where left, right, top, bottom of empty space
         // swap with empty space. Watch for corner cases
@@ -190,7 +319,7 @@ public class Board {
         }
 
         // bottom
-        if (emptySpacePos < (blocks.length - n)) {
+        if (emptySpacePos < (n * n - n)) {
             Board bottomNeighbor = createNeighbor(emptySpacePos, emptySpacePos + n);
             neighborBoards.push(bottomNeighbor);
         }
@@ -199,36 +328,131 @@ public class Board {
 
     // swaps empty space position with the element at swap position
     private Board createNeighbor(int emptySpacePos, int swapPosition) {
-        // Swap 0 and element at swap position
-        char tmp = blocks[swapPosition];
-        blocks[swapPosition] = blocks[emptySpacePos];
-        blocks[emptySpacePos] = tmp;
-        Board neighbor = this.constructBlocks(blocks);
+        int tile = tileAt(swapPosition);
+        Board neighbor;
+        if (blocks == null) {
+            // 3x3 and 4x4 boards move the tile with a bit swap, no arrays
+            neighbor = new Board(this, swapPacked(packed, emptySpacePos, swapPosition),
+                    null, swapPosition, zobristAfterMove(swapPosition, emptySpacePos, tile));
+        } else {
+            char[] neighborBlocks = blocks.clone();
+            neighborBlocks[emptySpacePos] = (char) tile;
+            neighborBlocks[swapPosition] = 0;
+            neighbor = new Board(this, 0L, neighborBlocks, swapPosition,
+                    zobristAfterMove(swapPosition, emptySpacePos, tile));
+        }
 
+        neighbor.manhattan = manhattanAfterMove(emptySpacePos, swapPosition, tile);
+        return neighbor;
+    }
+
+    // manhattan of this board once tile moves from swapPosition into the
+    // empty space at emptySpacePos
+    private int manhattanAfterMove(int emptySpacePos, int swapPosition, int tile) {
         // if the swapped element's new location is closer to it's goal
         // position, subtract 1 from manhattan. else add 1. Caching and
         // adding +- 1 should save N^2 iteration each manhattan calculation.
-        if (distanceToGoalPos(emptySpacePos, blocks[emptySpacePos]) <
-                distanceToGoalPos(swapPosition, blocks[emptySpacePos])) {
-            neighbor.manhattan = this.manhattan - 1;
-        } else {
-            neighbor.manhattan = this.manhattan + 1;
+        if (distanceToGoalPos(emptySpacePos, tile) <
+                distanceToGoalPos(swapPosition, tile)) {
+            return manhattan() - 1;
+        }
+        return manhattan() + 1;
+    }
+
+    // position of the empty space
+    int blankPosition() {
+        return blank;
+    }
+
+    // position the empty space moves to when sliding left (0), right (1),
+    // up (2) or down (3); -1 if that move would leave the board
+    int blankMove(int direction) {
+        switch (direction) {
+            case 0:
+                return (blank % n != 0) ? blank - 1 : -1;
+            case 1:
+                return (blank % n != n - 1) ? blank + 1 : -1;
+            case 2:
+                return (blank > n - 1) ? blank - n : -1;
+            default:
+                return (blank < n * n - n) ? blank + n : -1;
         }
+    }
 
-        blocks[emptySpacePos] = blocks[swapPosition];
-        blocks[swapPosition] = tmp;
-        return neighbor;
+    // neighbor with the empty space moved to swapPosition
+    Board moveBlank(int swapPosition) {
+        return createNeighbor(blank, swapPosition);
+    }
+
+    // private, mutable copy of this board for solvers that move tiles in
+    // place with slide(); boards handed out by the public API never change
+    Board copy() {
+        Board copy = new Board(this, packed,
+                (blocks == null) ? null : blocks.clone(), blank, zobrist);
+        copy.manhattan = manhattan();
+        return copy;
+    }
+
+    // are the tiles packed into a single long (boards up to 4x4)?
+    boolean isPacked() {
+        return blocks == null;
     }
 
+    // packed tiles of this board, meaningful only if isPacked()
+    long packedTiles() {
+        return packed;
+    }
+
+    // turn this private copy (see copy()) of a packed board into the board
+    // with the given packed tiles
+    void loadPacked(long tiles) {
+        packed = tiles;
+        for (int i = 0; i < n * n; i++) {
+            if (tileAt(i) == 0) blank = i;
+        }
+        manhattan = Integer.MAX_VALUE;
+        zobrist = calcZobrist();
+    }
+
+    // slides the tile at swapPosition into the empty space in place.
+    // Sliding back to the previous blank position undoes the move.
+    void slide(int swapPosition) {
+        int tile = tileAt(swapPosition);
+        manhattan = manhattanAfterMove(blank, swapPosition, tile);
+        zobrist = zobristAfterMove(swapPosition, blank, tile);
+        if (blocks == null) {
+            packed = swapPacked(packed, blank, swapPosition);
+        } else {
+            blocks[blank] = (char) tile;
+            blocks[swapPosition] = 0;
+        }
+        blank = swapPosition;
+    }
+
+
+    // canonical encoding of the board: the dimension, then the packed tiles
+    // in hex or, for larger boards, the tiles separated by commas
+    String key() {
+        StringBuilder s = new StringBuilder();
+        s.append(n).append(':');
+        if (blocks == null) {
+            return s.append(Long.toHexString(packed)).toString();
+        }
+        for (int i = 0; i < blocks.length; i++) {
+            if (i > 0) s.append(',');
+            s.append((int) blocks[i]);
+        }
+        return s.toString();
+    }
 
     // string representation of board
     public String toString() {
         StringBuilder s = new StringBuilder();
         s.append(n + "\n");
 
-        for (int i = 0; i < blocks.length; i += n) {
+        for (int i = 0; i < n * n; i += n) {
             for (int j = 0; j < n; j++) {
-                s.append(String.format("%" + (digitsInN + 1) + "d", (int) blocks[i + j]));
+                s.append(String.format("%" + (digitsInN + 1) + "d", tileAt(i + j)));
             }
             s.append("\n");
         }
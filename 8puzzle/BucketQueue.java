@@ -0,0 +1,104 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Priority queue for small non-negative integer priorities, such as the
+// moves + heuristic priorities of the A* search. Items are kept in one
+// bucket per (priority, tie break) pair, with lower tie breaks first among
+// equal priorities. Since the tie break (the heuristic) never exceeds the
+// priority, pair (p, t) goes to bucket p * (p + 1) / 2 + t, which orders
+// the buckets exactly like the pairs. Insert is O(1) and delMin is O(1)
+// amortized: the cursor to the lowest non-empty bucket only moves back
+// when an item is inserted below it.
+//*****************************************************************************
+
+import java.util.NoSuchElementException;
+
+public class BucketQueue<Item> {
+    private Object[][] buckets;     // buckets[i] is a stack of items
+    private int[] counts;           // number of items in buckets[i]
+    private int min;                // no items in buckets below min
+    private int size;
+
+    // create an empty queue
+    public BucketQueue() {
+        buckets = new Object[16][];
+        counts = new int[16];
+        min = 0;
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // add item with the given priority, ties going to the lowest tieBreak
+    public void insert(Item item, int priority, int tieBreak) {
+        if (tieBreak < 0 || tieBreak > priority) {
+            throw new IllegalArgumentException("Tie break out of range: " + tieBreak);
+        }
+        long index = (long) priority * (priority + 1) / 2 + tieBreak;
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Priority too large: " + priority);
+        }
+        int i = (int) index;
+        if (i >= buckets.length) {
+            resize(Math.max(i + 1, (int) Math.min(2L * buckets.length, Integer.MAX_VALUE - 1)));
+        }
+        if (buckets[i] == null) {
+            buckets[i] = new Object[4];
+        } else if (counts[i] == buckets[i].length) {
+            Object[] bucket = new Object[2 * counts[i]];
+            System.arraycopy(buckets[i], 0, bucket, 0, counts[i]);
+            buckets[i] = bucket;
+        }
+        buckets[i][counts[i]++] = item;
+        if (i < min) {
+            min = i;
+        }
+        size++;
+    }
+
+    // an item with the lowest priority and tie break, the one delMin()
+    // would return
+    @SuppressWarnings("unchecked")
+    public Item min() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Priority queue underflow");
+        }
+        while (counts[min] == 0) {
+            min++;
+        }
+        return (Item) buckets[min][counts[min] - 1];
+    }
+
+    // remove and return an item with the lowest priority and tie break
+    @SuppressWarnings("unchecked")
+    public Item delMin() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Priority queue underflow");
+        }
+        while (counts[min] == 0) {
+            min++;
+        }
+        int last = --counts[min];
+        Item item = (Item) buckets[min][last];
+        buckets[min][last] = null;   // avoid loitering
+        size--;
+        return item;
+    }
+
+    private void resize(int capacity) {
+        Object[][] resizedBuckets = new Object[capacity][];
+        int[] resizedCounts = new int[capacity];
+        System.arraycopy(buckets, 0, resizedBuckets, 0, buckets.length);
+        System.arraycopy(counts, 0, resizedCounts, 0, counts.length);
+        buckets = resizedBuckets;
+        counts = resizedCounts;
+    }
+}
@@ -0,0 +1,31 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Strategy for estimating the number of moves left to reach the goal board.
+// Solver searches with whichever heuristic it is given; every implementation
+// must never overestimate (be admissible) for the solutions to stay optimal.
+//*****************************************************************************
+
+public interface Heuristic {
+    // number of blocks out of place
+    Heuristic HAMMING = new Heuristic() {
+        public int estimate(Board board) {
+            return board.hamming();
+        }
+    };
+
+    // sum of manhattan distances, kept incrementally by Board
+    Heuristic MANHATTAN = new Heuristic() {
+        public int estimate(Board board) {
+            return board.manhattan();
+        }
+    };
+
+    // manhattan distance plus two moves for every linear conflict
+    Heuristic LINEAR_CONFLICT = new LinearConflict();
+
+    // lower bound on the moves needed to solve board
+    int estimate(Board board);
+}
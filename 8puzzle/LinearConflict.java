@@ -0,0 +1,64 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Manhattan distance plus linear conflicts. Two tiles are in linear conflict
+// when both sit in their goal row (or column) but in reverse order, so one
+// of them has to leave the line and come back, costing two extra moves that
+// manhattan does not count. For each line the fewest tiles that must leave
+// is the line length minus its longest increasing run of goal positions.
+//*****************************************************************************
+
+public class LinearConflict implements Heuristic {
+
+    public int estimate(Board board) {
+        int n = board.dimension();
+        int[] goals = new int[n];
+        int[] tails = new int[n];
+        int leaving = 0;
+
+        // rows: tiles in their goal row, in order of their goal columns
+        for (int row = 0; row < n; row++) {
+            int count = 0;
+            for (int col = 0; col < n; col++) {
+                int tile = board.tileAt(row * n + col);
+                if (tile != 0 && (tile - 1) / n == row) {
+                    goals[count++] = (tile - 1) % n;
+                }
+            }
+            leaving += count - longestIncreasing(goals, count, tails);
+        }
+
+        // columns: tiles in their goal column, in order of their goal rows
+        for (int col = 0; col < n; col++) {
+            int count = 0;
+            for (int row = 0; row < n; row++) {
+                int tile = board.tileAt(row * n + col);
+                if (tile != 0 && (tile - 1) % n == col) {
+                    goals[count++] = (tile - 1) / n;
+                }
+            }
+            leaving += count - longestIncreasing(goals, count, tails);
+        }
+        return board.manhattan() + 2 * leaving;
+    }
+
+    // length of the longest increasing subsequence of a[0..count), using
+    // tails[i] = smallest last element of an increasing run of length i + 1
+    private static int longestIncreasing(int[] a, int count, int[] tails) {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tails[mid] < a[i]) lo = mid + 1;
+                else hi = mid;
+            }
+            tails[lo] = a[i];
+            if (lo == length) length++;
+        }
+        return length;
+    }
+}
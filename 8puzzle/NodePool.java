@@ -0,0 +1,178 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Search nodes for 3x3 and 4x4 boards stored as parallel primitive arrays
+// instead of one object per node: the packed board, the parent's index,
+// the moves so far and the heuristic estimate. The arrays grow in chunks
+// so they are never copied. The pool also holds the A* open list, as
+// buckets linked through the nodes themselves (see BucketQueue for the
+// bucket order), and an index from each board to its best node.
+//*****************************************************************************
+
+import java.util.Arrays;
+
+class NodePool {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int NONE = -1;
+
+    // node i lives in chunk i >>> CHUNK_BITS at offset i & CHUNK_MASK
+    private long[][] states = new long[0][];
+    private int[][] parents = new int[0][];
+    private short[][] moves = new short[0][];
+    private short[][] estimates = new short[0][];
+    private int[][] next = new int[0][];    // next node in the same bucket
+    private int size;
+
+    // first node of each open bucket
+    private int[] heads;
+    private int min;
+
+    // open addressing table from packed board to its best node
+    private long[] keys;
+    private int[] values;
+    private int keyCount;
+
+    NodePool() {
+        heads = new int[16];
+        Arrays.fill(heads, NONE);
+        keys = new long[1 << 10];
+        values = new int[1 << 10];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long state(int node) {
+        return states[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int parent(int node) {
+        return parents[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int moves(int node) {
+        return moves[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    int estimate(int node) {
+        return estimates[node >>> CHUNK_BITS][node & CHUNK_MASK];
+    }
+
+    // node holding state with the fewest moves so far, -1 if none
+    int find(long state) {
+        int mask = keys.length - 1;
+        for (int i = hash(state) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == state) return values[i];
+        }
+        return NONE;
+    }
+
+    /* Add a node and queue it, making it the best node for its state.
+       A node it replaces stays queued and is recognized as stale by
+       find(state(node)) != node when polled. States are never 0, as no
+       board of dimension 2 or more packs to all zero tiles.
+     */
+    int add(long state, int parent, int movesSoFar, int estimate) {
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Node pool is full.");
+        }
+        int node = size++;
+        int chunk = node >>> CHUNK_BITS;
+        if (chunk == states.length) {
+            grow();
+        }
+        int offset = node & CHUNK_MASK;
+        states[chunk][offset] = state;
+        parents[chunk][offset] = parent;
+        moves[chunk][offset] = (short) movesSoFar;
+        estimates[chunk][offset] = (short) estimate;
+        index(state, node);
+
+        int priority = movesSoFar + estimate;
+        int bucket = priority * (priority + 1) / 2 + estimate;
+        if (bucket >= heads.length) {
+            int[] resized = new int[Math.max(bucket + 1, 2 * heads.length)];
+            Arrays.fill(resized, NONE);
+            System.arraycopy(heads, 0, resized, 0, heads.length);
+            heads = resized;
+        }
+        next[chunk][offset] = heads[bucket];
+        heads[bucket] = node;
+        if (bucket < min) {
+            min = bucket;
+        }
+        return node;
+    }
+
+    // remove the queued node with the lowest priority, then estimate;
+    // -1 when the open list is empty
+    int poll() {
+        while (min < heads.length && heads[min] == NONE) {
+            min++;
+        }
+        if (min == heads.length) {
+            return NONE;
+        }
+        int node = heads[min];
+        heads[min] = next[node >>> CHUNK_BITS][node & CHUNK_MASK];
+        return node;
+    }
+
+    private void grow() {
+        int chunks = states.length + 1;
+        states = Arrays.copyOf(states, chunks);
+        parents = Arrays.copyOf(parents, chunks);
+        moves = Arrays.copyOf(moves, chunks);
+        estimates = Arrays.copyOf(estimates, chunks);
+        next = Arrays.copyOf(next, chunks);
+        states[chunks - 1] = new long[CHUNK_SIZE];
+        parents[chunks - 1] = new int[CHUNK_SIZE];
+        moves[chunks - 1] = new short[CHUNK_SIZE];
+        estimates[chunks - 1] = new short[CHUNK_SIZE];
+        next[chunks - 1] = new int[CHUNK_SIZE];
+    }
+
+    private void index(long state, int node) {
+        if (2 * (keyCount + 1) > keys.length) {
+            rehash(2 * keys.length);
+        }
+        int mask = keys.length - 1;
+        int i = hash(state) & mask;
+        while (keys[i] != 0 && keys[i] != state) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == 0) {
+            keys[i] = state;
+            keyCount++;
+        }
+        values[i] = node;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    // spread the bits of a packed board over the low bits of the hash
+    private static int hash(long state) {
+        long h = state * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,431 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Additive disjoint pattern database heuristic. The tiles are split into
+// disjoint groups (patterns); for each pattern a table stores the fewest
+// moves of that pattern's tiles needed to bring them home from every
+// placement, found by breadth first search back from the goal. Only moves
+// of a pattern's own tiles are counted, so the tables of disjoint patterns
+// can be added and still never overestimate.
+//
+// The search tracks the empty space as well as the pattern tiles: the
+// empty space moves through the cells no pattern tile takes for free, and
+// a pattern tile can only slide into the empty space, for one move. That
+// makes it a 0-1 breadth first search. It is run as a plain one by keeping
+// only the region of free cells the empty space can reach, named by its
+// smallest cell, since every cell of the region is reached at no cost.
+// A table stores the fewest moves over all positions of the empty space,
+// which keeps it at one byte per placement of the pattern tiles. Taking
+// that minimum keeps the estimate admissible but not always consistent,
+// which the searches allow for by reopening boards reached more cheaply.
+// Tables are built once, saved to a compact binary file and memory-mapped
+// on load:
+//
+//   int magic, int n, int patterns,
+//   per pattern: int size, size ints of tiles,
+//   per pattern: one byte per placement, indexed by rank().
+//*****************************************************************************
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class PatternDatabase implements Heuristic {
+    private static final int MAGIC = 0x50444232;    // "PDB2"
+    private static final byte UNSEEN = -1;
+    private static final int MAX_DISTANCE = 0xFE;   // 0xFF is UNSEEN
+
+    // 6-6-3 partition of the 15 puzzle
+    private static final int[][] FIFTEEN_PUZZLE_6_6_3 = {
+            {1, 5, 6, 9, 10, 13},
+            {7, 8, 11, 12, 14, 15},
+            {2, 3, 4}
+    };
+
+    private final int n;
+    private final int[][] patterns;
+    private final int[] offsets;    // start of each pattern's table in tables
+    private final ByteBuffer tables;
+
+    // for each tile, its pattern and index in the pattern (-1 if in none),
+    // and for each pattern index, its weight in rank()
+    private final int[] patternOf;
+    private final int[] indexOf;
+    private final int[][] weights;
+
+    // build the tables for the given disjoint patterns of an n-by-n board
+    public PatternDatabase(int n, int[][] patterns) {
+        if (patterns == null) {
+            throw new IllegalArgumentException("Null patterns input.");
+        }
+        this.n = n;
+        this.patterns = validate(n, patterns);
+        this.offsets = new int[patterns.length];
+
+        long total = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            offsets[i] = (int) total;
+            long size = placements(n * n, patterns[i].length);
+            total += size;
+            // the search numbers its states by placement and cell
+            if (total > Integer.MAX_VALUE || size * n * n > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Patterns too large to tabulate.");
+            }
+        }
+        byte[] data = new byte[(int) total];
+        for (int i = 0; i < patterns.length; i++) {
+            tabulate(this.patterns[i], data, offsets[i]);
+        }
+        this.tables = ByteBuffer.wrap(data);
+        this.patternOf = new int[n * n];
+        this.indexOf = new int[n * n];
+        this.weights = new int[patterns.length][];
+        index();
+    }
+
+    private PatternDatabase(int n, int[][] patterns, int[] offsets, ByteBuffer tables) {
+        this.n = n;
+        this.patterns = patterns;
+        this.offsets = offsets;
+        this.tables = tables;
+        this.patternOf = new int[n * n];
+        this.indexOf = new int[n * n];
+        this.weights = new int[patterns.length][];
+        index();
+    }
+
+    // fill in patternOf, indexOf and weights
+    private void index() {
+        Arrays.fill(patternOf, -1);
+        int cells = n * n;
+        for (int i = 0; i < patterns.length; i++) {
+            int k = patterns[i].length;
+            weights[i] = new int[k];
+            int weight = 1;
+            for (int j = k - 1; j >= 0; j--) {
+                patternOf[patterns[i][j]] = i;
+                indexOf[patterns[i][j]] = j;
+                weights[i][j] = weight;
+                weight *= cells - j;
+            }
+        }
+    }
+
+    // 6-6-3 additive pattern database for the 15 puzzle
+    public static PatternDatabase fifteenPuzzle() {
+        return new PatternDatabase(4, FIFTEEN_PUZZLE_6_6_3);
+    }
+
+    // memory-map a database written by save()
+    public static PatternDatabase load(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Pattern database too large to map: " + filename);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a pattern database: " + filename);
+            }
+            int n = buffer.getInt();
+            int[][] patterns = new int[buffer.getInt()][];
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = new int[buffer.getInt()];
+                for (int j = 0; j < patterns[i].length; j++) {
+                    patterns[i][j] = buffer.getInt();
+                }
+            }
+            validate(n, patterns);
+
+            int[] offsets = new int[patterns.length];
+            long offset = buffer.position();
+            for (int i = 0; i < patterns.length; i++) {
+                offsets[i] = (int) offset;
+                offset += placements(n * n, patterns[i].length);
+            }
+            if (offset != buffer.limit()) {
+                throw new IOException("Truncated pattern database: " + filename);
+            }
+            // the mapping stays valid after the channel is closed
+            return new PatternDatabase(n, patterns, offsets, buffer);
+        }
+    }
+
+    // write the header and tables in the format read by load()
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeInt(patterns.length);
+            for (int[] pattern : patterns) {
+                out.writeInt(pattern.length);
+                for (int tile : pattern) {
+                    out.writeInt(tile);
+                }
+            }
+            for (int i = 0; i < patterns.length; i++) {
+                long size = placements(n * n, patterns[i].length);
+                for (int j = 0; j < size; j++) {
+                    out.writeByte(tables.get(offsets[i] + j));
+                }
+            }
+        }
+    }
+
+    // sum of the moves each pattern needs from its placement on board
+    public int estimate(Board board) {
+        if (board.dimension() != n) {
+            throw new IllegalArgumentException("Board dimension does not match database.");
+        }
+        int estimate = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            estimate += tables.get(offsets[i] + rank(board, i)) & 0xFF;
+        }
+        return estimate;
+    }
+
+    /* rank() of the placement of pattern i on board, computed in one scan
+       of the cells without building the positions array: going through the
+       cells in order, the digit of the tile at index j is its cell less the
+       cells already seen holding tiles of the pattern before index j.
+     */
+    private int rank(Board board, int i) {
+        int rank = 0;
+        int seen = 0;   // bit j set once the tile at index j has been passed
+        for (int pos = 0; pos < n * n; pos++) {
+            int tile = board.tileAt(pos);
+            if (tile == 0 || patternOf[tile] != i) {
+                continue;
+            }
+            int j = indexOf[tile];
+            int digit = pos - Integer.bitCount(seen & ((1 << j) - 1));
+            rank += digit * weights[i][j];
+            seen |= 1 << j;
+        }
+        return rank;
+    }
+
+    /* Breadth first search from the goal, storing at data[offset + rank]
+       the fewest moves of any state with that placement of the pattern.
+       A state is a placement and the region of free cells holding the
+       empty space, numbered placement * cells + the region's smallest
+       cell. A move slides a pattern tile next to the region into it,
+       leaving the empty space where the tile was.
+     */
+    private void tabulate(int[] pattern, byte[] data, int offset) {
+        int k = pattern.length;
+        int cells = n * n;
+        int size = (int) placements(cells, k);
+        for (int i = 0; i < size; i++) {
+            data[offset + i] = UNSEEN;
+        }
+
+        int[] positions = new int[k];
+        int[] owner = new int[cells];       // pattern index at each cell, or -1
+        boolean[] marked = new boolean[cells];
+        int[] region = new int[cells];
+        int[] moved = new int[cells];
+        Arrays.fill(owner, -1);
+        long[] visited = new long[(int) (((long) size * cells + 63) >>> 6)];
+
+        for (int j = 0; j < k; j++) {
+            positions[j] = pattern[j] - 1;
+            owner[positions[j]] = j;
+        }
+        int start = rank(positions, k, cells);
+        int found = fill(cells - 1, owner, marked, region);
+        int startState = start * cells + smallest(region, found);
+        for (int j = 0; j < k; j++) {
+            owner[positions[j]] = -1;
+        }
+        visited[startState >>> 6] |= 1L << startState;
+        data[offset + start] = 0;
+
+        int[] frontier = { startState };
+        int frontierSize = 1;
+        int[] next = new int[16];
+        for (int distance = 0; frontierSize > 0; distance++) {
+            int nextSize = 0;
+            for (int f = 0; f < frontierSize; f++) {
+                int placement = frontier[f] / cells;
+                unrank(placement, positions, k, cells);
+                for (int j = 0; j < k; j++) {
+                    owner[positions[j]] = j;
+                }
+                int regionSize = fill(frontier[f] % cells, owner, marked, region);
+
+                for (int r = 0; r < regionSize; r++) {
+                    int to = region[r];
+                    for (int direction = 0; direction < 4; direction++) {
+                        int from = step(to, direction);
+                        if (from < 0 || owner[from] < 0) {
+                            continue;
+                        }
+                        int j = owner[from];
+                        positions[j] = to;
+                        owner[to] = j;
+                        owner[from] = -1;
+                        int nextPlacement = rank(positions, k, cells);
+                        int count = fill(from, owner, marked, moved);
+                        int state = nextPlacement * cells + smallest(moved, count);
+                        positions[j] = from;
+                        owner[from] = j;
+                        owner[to] = -1;
+
+                        if ((visited[state >>> 6] & (1L << state)) != 0) {
+                            continue;
+                        }
+                        visited[state >>> 6] |= 1L << state;
+                        if (data[offset + nextPlacement] == UNSEEN) {
+                            data[offset + nextPlacement] =
+                                    (byte) Math.min(distance + 1, MAX_DISTANCE);
+                        }
+                        if (nextSize == next.length) {
+                            next = Arrays.copyOf(next, 2 * nextSize);
+                        }
+                        next[nextSize++] = state;
+                    }
+                }
+
+                for (int j = 0; j < k; j++) {
+                    owner[positions[j]] = -1;
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            frontierSize = nextSize;
+        }
+    }
+
+    // the free cells reachable from free cell start, written to region;
+    // returns how many there are
+    private int fill(int start, int[] owner, boolean[] marked, int[] region) {
+        int count = 0;
+        region[count++] = start;
+        marked[start] = true;
+        for (int r = 0; r < count; r++) {
+            for (int direction = 0; direction < 4; direction++) {
+                int cell = step(region[r], direction);
+                if (cell >= 0 && owner[cell] < 0 && !marked[cell]) {
+                    marked[cell] = true;
+                    region[count++] = cell;
+                }
+            }
+        }
+        for (int r = 0; r < count; r++) {
+            marked[region[r]] = false;
+        }
+        return count;
+    }
+
+    private static int smallest(int[] region, int count) {
+        int min = region[0];
+        for (int r = 1; r < count; r++) {
+            min = Math.min(min, region[r]);
+        }
+        return min;
+    }
+
+    // cell next to pos in direction left, right, up, down; -1 off the board
+    private int step(int pos, int direction) {
+        switch (direction) {
+            case 0:
+                return (pos % n != 0) ? pos - 1 : -1;
+            case 1:
+                return (pos % n != n - 1) ? pos + 1 : -1;
+            case 2:
+                return (pos >= n) ? pos - n : -1;
+            default:
+                return (pos < n * n - n) ? pos + n : -1;
+        }
+    }
+
+    /* Index of a placement of k distinct cells out of `cells` among all
+       cells! / (cells - k)! placements. Each position is counted among the
+       cells not used by the ones before it, in mixed radix.
+     */
+    private static int rank(int[] positions, int k, int cells) {
+        int rank = 0;
+        for (int i = 0; i < k; i++) {
+            int digit = positions[i];
+            for (int j = 0; j < i; j++) {
+                if (positions[j] < positions[i]) digit--;
+            }
+            rank = rank * (cells - i) + digit;
+        }
+        return rank;
+    }
+
+    // inverse of rank()
+    private static void unrank(int rank, int[] positions, int k, int cells) {
+        for (int i = k - 1; i >= 0; i--) {
+            positions[i] = rank % (cells - i);
+            rank /= cells - i;
+        }
+        for (int i = 0; i < k; i++) {
+            // turn the digit back into a cell, skipping cells used before i
+            int cell = -1;
+            for (int digit = positions[i]; digit >= 0; digit--) {
+                cell++;
+                while (usedBefore(positions, i, cell)) cell++;
+            }
+            positions[i] = cell;
+        }
+    }
+
+    private static boolean usedBefore(int[] positions, int i, int cell) {
+        for (int j = 0; j < i; j++) {
+            if (positions[j] == cell) return true;
+        }
+        return false;
+    }
+
+    // number of placements of k distinct cells among cells
+    private static long placements(int cells, int k) {
+        long count = 1;
+        for (int i = 0; i < k; i++) {
+            count *= cells - i;
+        }
+        return count;
+    }
+
+    private static int[][] validate(int n, int[][] patterns) {
+        if (n < 2) {
+            throw new IllegalArgumentException("Board dimension too small.");
+        }
+        boolean[] seen = new boolean[n * n];
+        int[][] copy = new int[patterns.length][];
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i] == null || patterns[i].length == 0) {
+                throw new IllegalArgumentException("Empty pattern.");
+            }
+            for (int tile : patterns[i]) {
+                if (tile < 1 || tile >= n * n) {
+                    throw new IllegalArgumentException("Tile out of range: " + tile);
+                }
+                if (seen[tile]) {
+                    throw new IllegalArgumentException("Patterns are not disjoint: " + tile);
+                }
+                seen[tile] = true;
+            }
+            copy[i] = patterns[i].clone();
+        }
+        return copy;
+    }
+
+    // build the 15 puzzle database and write it to the given file
+    public static void main(String[] args) throws IOException {
+        PatternDatabase database = fifteenPuzzle();
+        database.save(args[0]);
+        StdOut.println("Wrote pattern database to " + args[0]);
+    }
+}
@@ -0,0 +1,137 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Bounded, thread-safe cache of solved boards. Entries are keyed by the
+// board's canonical encoding and hold the solution as a move string (one
+// letter per move of the empty space), evicting the least recently used
+// entry once full. A hit replays the moves instead of searching. The cache
+// can be saved to a text file, one "key<TAB>moves" line per entry from the
+// least to the most recently used, and warmed from it at startup.
+//*****************************************************************************
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SolutionCache {
+    private final LinkedHashMap<String, String> solutions;
+    private final Solver.Mode mode;
+    private final Heuristic heuristic;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // cache up to capacity solutions found with A* and manhattan distance
+    public SolutionCache(int capacity) {
+        this(capacity, Solver.Mode.ASTAR, Heuristic.MANHATTAN);
+    }
+
+    // cache up to capacity solutions found with the given mode and heuristic
+    public SolutionCache(final int capacity, Solver.Mode mode, Heuristic heuristic) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("Null mode input.");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Null heuristic input.");
+        }
+        this.mode = mode;
+        this.heuristic = heuristic;
+        // access ordered, so the eldest entry is the least recently used
+        this.solutions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /* Solver for board, from the cache when it holds the board. Unsolvable
+       boards are answered by Solver's parity check and never cached. On a
+       miss the board is solved outside the lock, so two threads missing on
+       the same board may both solve it.
+     */
+    public Solver solve(Board board) {
+        if (board == null) {
+            throw new IllegalArgumentException("Null board input.");
+        }
+        if (!board.isSolvable()) {
+            return new Solver(board, mode, heuristic);
+        }
+
+        String key = board.key();
+        String moves;
+        synchronized (solutions) {
+            moves = solutions.get(key);
+        }
+        if (moves != null) {
+            hits.incrementAndGet();
+            return new Solver(board, moves);
+        }
+
+        misses.incrementAndGet();
+        Solver solver = new Solver(board, mode, heuristic);
+        synchronized (solutions) {
+            solutions.put(key, solver.moveString());
+        }
+        return solver;
+    }
+
+    public int size() {
+        synchronized (solutions) {
+            return solutions.size();
+        }
+    }
+
+    // number of solve() calls answered from the cache
+    public long hits() {
+        return hits.get();
+    }
+
+    // number of solve() calls that had to search
+    public long misses() {
+        return misses.get();
+    }
+
+    // write every entry, least recently used first
+    public void save(String filename) throws IOException {
+        List<Map.Entry<String, String>> entries;
+        synchronized (solutions) {
+            entries = new ArrayList<>(solutions.entrySet());
+        }
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(filename))) {
+            for (Map.Entry<String, String> entry : entries) {
+                out.write(entry.getKey());
+                out.write('\t');
+                out.write(entry.getValue());
+                out.newLine();
+            }
+        }
+    }
+
+    // add the entries of a file written by save(); later lines count as
+    // more recently used
+    public void load(String filename) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException("Malformed cache line: " + line);
+                }
+                synchronized (solutions) {
+                    solutions.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+    }
+}
@@ -4,82 +4,177 @@
 // Date: 10/14/18
 //
 // This class implements a method for solving the 8/15 puzzle problem,
-// using the A* algorithm.
+// using the A* algorithm (on search node objects or a pooled node store),
+// bidirectional A* from both ends, or iterative deepening A* (IDA*) when
+// memory matters more than speed. Unsolvable boards are rejected up front
+// by Board.isSolvable() before any search is run. Every mode ranks boards
+// with a pluggable Heuristic, manhattan distance by default. A search can be
+// given a budget of expanded nodes and a deadline (see BatchSolver), after
+// which it gives up and reports no solution.
 //*****************************************************************************
 
-import edu.princeton.cs.algs4.MinPQ;
 import edu.princeton.cs.algs4.Stack;
 
+import java.util.HashMap;
+
 public class Solver {
+    private static final int FOUND = -1;
+    private static final int ABORTED = -2;
+
+    // letter for each Board.blankMove() direction, see moveString()
+    private static final String MOVE_LETTERS = "LRUD";
+
     private Stack<Board> boardSequence;
     private boolean solvable;
     private int moves;
+    private Heuristic heuristic;
+
+    // search budget: expanded node limit and System.nanoTime() deadline
+    private long nodeBudget;
+    private long deadline;
+    private long expanded;
+    private boolean budgetExceeded;
+
+    // fewest moves found so far to each board the A* search has generated,
+    // covering both the open (queued) and closed (expanded) boards
+    private HashMap<Board, Integer> bestMoves;
+
+    // blank positions along the current IDA* path, path[0] is the start
+    private int[] path;
+    private int pathLength;
+
+    // search strategy used to solve the board
+    public enum Mode {
+        ASTAR,      // best first search, keeps every expanded node
+        IDASTAR,    // depth first with a growing heuristic threshold,
+                    // memory proportional to the solution depth
+        POOLED,     // A* keeping nodes in a primitive NodePool, for boards
+                    // up to 4x4; larger boards fall back to ASTAR
+        BIDIRECTIONAL   // A* from the initial and the goal board at once,
+                        // meeting in the middle
+    }
 
-    private class searchNode implements Comparable<searchNode> {
+    private class searchNode {
         Board board;
         int priority;
-        int manhattan;
+        int estimate;
         searchNode last;
         int moves;
 
         searchNode(Board board, int movesSoFar, searchNode last) {
+            this(board, movesSoFar, heuristic.estimate(board), last);
+        }
+
+        searchNode(Board board, int movesSoFar, int estimate, searchNode last) {
             this.board = board;
             this.moves = movesSoFar;
-            this.priority = movesSoFar + board.manhattan();
+            this.estimate = estimate;
+            this.priority = movesSoFar + estimate;
             this.last = last;
         }
+    }
+
+    // find a solution to the initial board (using the A* algorithm)
+    public Solver(Board initial) {
+        this(initial, Mode.ASTAR);
+    }
+
+    // solution of a solvable initial board replayed from moveString() of
+    // an earlier solver, without searching
+    Solver(Board initial, String moveString) {
+        solvable = true;
+        boardSequence = new Stack<>();
+        moves = moveString.length();
 
-        public int compareTo(searchNode that) {
-            if (this.priority > that.priority) return 1;
-            else if (that.priority > this.priority) return -1;
-            else if (this.manhattan < that.manhattan) return -1;
-            else if (this.manhattan > that.manhattan) return 1;
-            else {
-                return 0;
+        Board[] sequence = new Board[moves + 1];
+        sequence[0] = initial;
+        for (int i = 1; i <= moves; i++) {
+            int direction = MOVE_LETTERS.indexOf(moveString.charAt(i - 1));
+            int swapPosition = (direction < 0) ? -1 : sequence[i - 1].blankMove(direction);
+            if (swapPosition < 0) {
+                throw new IllegalArgumentException("Illegal move " + (i - 1) + " in " + moveString);
             }
+            sequence[i] = sequence[i - 1].moveBlank(swapPosition);
+        }
+        if (!sequence[moves].isGoal()) {
+            throw new IllegalArgumentException("Moves do not solve the board.");
         }
+        for (int i = moves; i >= 0; i--) {
+            boardSequence.push(sequence[i]);
+        }
+    }
 
+    // find a solution to the initial board using the given search mode
+    public Solver(Board initial, Mode mode) {
+        this(initial, mode, Heuristic.MANHATTAN);
     }
 
-    // find a solution to the initial board (using the A* algorithm)
-    public Solver(Board initial) {
+    // find a solution to the initial board using the given search mode,
+    // ranking boards with heuristic
+    public Solver(Board initial, Mode mode, Heuristic heuristic) {
+        this(initial, mode, heuristic, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    // as above, but give up after expanding nodeBudget boards or once
+    // System.nanoTime() passes deadline
+    Solver(Board initial, Mode mode, Heuristic heuristic, long nodeBudget, long deadline) {
 
         if (initial == null) {
             throw new IllegalArgumentException("Null board input.");
         }
-        int moves = 0;
-        solvable = false;
-
+        if (mode == null) {
+            throw new IllegalArgumentException("Null mode input.");
+        }
+        if (heuristic == null) {
+            throw new IllegalArgumentException("Null heuristic input.");
+        }
+        this.heuristic = heuristic;
+        this.nodeBudget = nodeBudget;
+        this.deadline = deadline;
+        solvable = initial.isSolvable();
         boardSequence = new Stack<>();
-        // initialize search for init and twin
+        if (!solvable) {
+            return;
+        }
+
+        if (mode == Mode.IDASTAR) {
+            iterativeDeepening(initial);
+        } else if (mode == Mode.POOLED && initial.isPacked()) {
+            pooledAStar(initial);
+        } else if (mode == Mode.BIDIRECTIONAL) {
+            bidirectional(initial);
+        } else {
+            aStar(initial);
+        }
+    }
+
+    private void aStar(Board initial) {
+        int moves = 0;
         searchNode initFirst = new searchNode(initial, 0, null);
-        searchNode twinFirst = new searchNode(initial.twin(), 0, null);
 
-        // create game trees
-        MinPQ<searchNode> initGameTree = new MinPQ<>();
-        MinPQ<searchNode> twinGameTree = new MinPQ<>();
-        initGameTree.insert(initFirst);
-        twinGameTree.insert(twinFirst);
+        // create game tree, ordered by priority then by estimate
+        BucketQueue<searchNode> initGameTree = new BucketQueue<>();
+        bestMoves = new HashMap<>();
+        initGameTree.insert(initFirst, initFirst.priority, initFirst.estimate);
+        bestMoves.put(initial, 0);
 
         searchNode initMin = initGameTree.delMin();
-        searchNode twinMin = twinGameTree.delMin();
 
-        while (!initMin.board.isGoal() && !twinMin.board.isGoal()) {
+        while (!initMin.board.isGoal()) {
+            if (outOfBudget()) {
+                bestMoves = null;
+                return;
+            }
             // add neighbors for init
             treeUpdateNeighbors(initMin, initGameTree, initMin.moves + 1);
 
-            // add neighbors for twin
-            treeUpdateNeighbors(twinMin, twinGameTree, twinMin.moves + 1);
-
-            // update min node for init
-            initMin = initGameTree.delMin();
-
-            // update min node for twin
-            twinMin = twinGameTree.delMin();
+            // update min node for init, skipping nodes that were queued
+            // again later with fewer moves (lazy decrease-key)
+            do {
+                initMin = initGameTree.delMin();
+            } while (initMin.moves > bestMoves.get(initMin.board));
         }
-
-        if (initMin.board.isGoal())
-            solvable = true;
+        bestMoves = null;
 
         // reconstruct solution
         boardSequence.push(initMin.board);
@@ -92,38 +187,331 @@ public class Solver {
         this.moves = moves;
     }
 
+    /* Same search as aStar(), but every node is a few primitive fields in a
+       NodePool instead of a searchNode and a Board. Successors are made by
+       sliding tiles on one scratch board, and the solution is rebuilt by
+       following parent indices back from the goal node.
+     */
+    private void pooledAStar(Board initial) {
+        NodePool pool = new NodePool();
+        Board scratch = initial.copy();
+        pool.add(initial.packedTiles(), -1, 0, heuristic.estimate(scratch));
+
+        int node = pool.poll();
+        while (true) {
+            scratch.loadPacked(pool.state(node));
+            if (scratch.isGoal()) {
+                break;
+            }
+            if (outOfBudget()) {
+                return;
+            }
+
+            int movesSoFar = pool.moves(node) + 1;
+            int blank = scratch.blankPosition();
+            for (int direction = 0; direction < 4; direction++) {
+                int swapPosition = scratch.blankMove(direction);
+                if (swapPosition < 0) {
+                    continue;
+                }
+                scratch.slide(swapPosition);
+                long state = scratch.packedTiles();
+                int best = pool.find(state);
+                if (best < 0 || pool.moves(best) > movesSoFar) {
+                    pool.add(state, node, movesSoFar, heuristic.estimate(scratch));
+                }
+                scratch.slide(blank);
+            }
+
+            // skip nodes superseded by a cheaper path to the same board
+            do {
+                node = pool.poll();
+            } while (pool.find(pool.state(node)) != node);
+        }
+
+        // collect the states from the goal back to the initial board
+        moves = pool.moves(node);
+        long[] states = new long[moves + 1];
+        for (int i = moves; i >= 0; i--, node = pool.parent(node)) {
+            states[i] = pool.state(node);
+        }
+
+        Board[] sequence = new Board[moves + 1];
+        sequence[0] = initial;
+        for (int i = 1; i <= moves; i++) {
+            scratch.loadPacked(states[i]);
+            sequence[i] = sequence[i - 1].moveBlank(scratch.blankPosition());
+        }
+        for (int i = moves; i >= 0; i--) {
+            boardSequence.push(sequence[i]);
+        }
+    }
+
+    /* Bidirectional A*. One search runs forward from the initial board,
+       ranked by heuristic, and one backward from the goal board, ranked by
+       the manhattan distance to the initial board. Each step expands the
+       side with the smaller open list. Whenever a side reaches a board the
+       other side has reached too, the joined path is a candidate solution.
+       Once the best candidate costs no more than the lowest priority left
+       in either open list, no shorter path can remain, as every priority
+       is a lower bound on the paths through its board.
+     */
+    private void bidirectional(Board initial) {
+        int n = initial.dimension();
+        Board goal = Board.goal(n);
+
+        // where each tile sits on the initial board, the backward target
+        int[] initialPosition = new int[n * n];
+        for (int pos = 0; pos < n * n; pos++) {
+            initialPosition[initial.tileAt(pos)] = pos;
+        }
+        int goalToInitial = 0;
+        for (int pos = 0; pos < n * n; pos++) {
+            int tile = goal.tileAt(pos);
+            if (tile != 0) {
+                goalToInitial += distance(pos, initialPosition[tile], n);
+            }
+        }
+
+        HashMap<Board, searchNode> forwardBest = new HashMap<>();
+        HashMap<Board, searchNode> backwardBest = new HashMap<>();
+        BucketQueue<searchNode> forwardTree = new BucketQueue<>();
+        BucketQueue<searchNode> backwardTree = new BucketQueue<>();
+        searchNode forwardFirst = new searchNode(initial, 0, null);
+        searchNode backwardFirst = new searchNode(goal, 0, goalToInitial, null);
+        forwardTree.insert(forwardFirst, forwardFirst.priority, forwardFirst.estimate);
+        backwardTree.insert(backwardFirst, backwardFirst.priority, backwardFirst.estimate);
+        forwardBest.put(initial, forwardFirst);
+        backwardBest.put(goal, backwardFirst);
+
+        int best = Integer.MAX_VALUE;
+        searchNode forwardMeet = null;
+        searchNode backwardMeet = null;
+        if (initial.equals(goal)) {
+            best = 0;
+            forwardMeet = forwardFirst;
+            backwardMeet = backwardFirst;
+        }
+
+        while (!forwardTree.isEmpty() && !backwardTree.isEmpty()
+                && best > Math.max(forwardTree.min().priority, backwardTree.min().priority)) {
+            boolean forward = forwardTree.size() <= backwardTree.size();
+            BucketQueue<searchNode> tree = forward ? forwardTree : backwardTree;
+            HashMap<Board, searchNode> reached = forward ? forwardBest : backwardBest;
+            HashMap<Board, searchNode> other = forward ? backwardBest : forwardBest;
+
+            searchNode minNode = tree.delMin();
+            if (reached.get(minNode.board) != minNode) {
+                continue;   // superseded by a cheaper path
+            }
+            if (outOfBudget()) {
+                return;
+            }
+
+            int movesSoFar = minNode.moves + 1;
+            int blank = minNode.board.blankPosition();
+            for (Board neighbor : minNode.board.neighbors()) {
+                searchNode known = reached.get(neighbor);
+                if (known != null && known.moves <= movesSoFar) {
+                    continue;
+                }
+                searchNode node;
+                if (forward) {
+                    node = new searchNode(neighbor, movesSoFar, minNode);
+                } else {
+                    // the tile that moved went from the neighbor's blank
+                    // position to this board's blank position
+                    int from = neighbor.blankPosition();
+                    int target = initialPosition[minNode.board.tileAt(from)];
+                    int estimate = minNode.estimate + distance(blank, target, n)
+                            - distance(from, target, n);
+                    node = new searchNode(neighbor, movesSoFar, estimate, minNode);
+                }
+                reached.put(neighbor, node);
+                tree.insert(node, node.priority, node.estimate);
+
+                searchNode meet = other.get(neighbor);
+                if (meet != null && movesSoFar + meet.moves < best) {
+                    best = movesSoFar + meet.moves;
+                    forwardMeet = forward ? node : meet;
+                    backwardMeet = forward ? meet : node;
+                }
+            }
+        }
+
+        // boards after the meeting point, walking the backward chain to the
+        // goal, then the forward chain back to the initial board
+        Stack<Board> goalSide = new Stack<>();
+        for (searchNode ptr = backwardMeet.last; ptr != null; ptr = ptr.last) {
+            goalSide.push(ptr.board);
+        }
+        for (Board board : goalSide) {
+            boardSequence.push(board);
+        }
+        for (searchNode ptr = forwardMeet; ptr != null; ptr = ptr.last) {
+            boardSequence.push(ptr.board);
+        }
+        moves = best;
+    }
+
+    // manhattan distance between positions a and b on an n-by-n board
+    private static int distance(int a, int b, int n) {
+        return Math.abs(a / n - b / n) + Math.abs(a % n - b % n);
+    }
+
+    /* Iterative deepening A*. Depth first search from the initial board that
+       cuts off every path whose moves + heuristic exceeds a bound, raising
+       the bound to the smallest cut off priority after each failed pass.
+       Tiles are slid in place on a private copy of the board and slid back
+       on return, so only the blank positions of the current path are kept.
+     */
+    private void iterativeDeepening(Board initial) {
+        Board init = initial.copy();
+        int bound = heuristic.estimate(init);
+        path = new int[16];
+
+        while (bound != FOUND) {
+            pathLength = 0;
+            pushPath(init.blankPosition());
+            bound = depthFirst(init, 0, bound, -1);
+            if (bound == ABORTED) {
+                path = null;
+                return;
+            }
+        }
+
+        // replay the blank positions to rebuild the solution
+        Board[] sequence = new Board[pathLength];
+        sequence[0] = initial;
+        for (int i = 1; i < pathLength; i++) {
+            sequence[i] = sequence[i - 1].moveBlank(path[i]);
+        }
+        for (int i = pathLength - 1; i >= 0; i--) {
+            boardSequence.push(sequence[i]);
+        }
+        moves = pathLength - 1;
+        path = null;
+    }
+
+    // bounded depth first search below board; returns FOUND with the path
+    // left in place, ABORTED when out of budget, or the smallest priority
+    // that exceeded bound
+    private int depthFirst(Board board, int movesSoFar, int bound, int previousBlank) {
+        int priority = movesSoFar + heuristic.estimate(board);
+        if (priority > bound) {
+            return priority;
+        }
+        if (board.isGoal()) {
+            return FOUND;
+        }
+        if (outOfBudget()) {
+            return ABORTED;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int blank = board.blankPosition();
+        for (int direction = 0; direction < 4; direction++) {
+            int swapPosition = board.blankMove(direction);
+            // never undo the move that led here
+            if (swapPosition < 0 || swapPosition == previousBlank) {
+                continue;
+            }
+            board.slide(swapPosition);
+            pushPath(swapPosition);
+            int t = depthFirst(board, movesSoFar + 1, bound, blank);
+            if (t == FOUND || t == ABORTED) {
+                return t;
+            }
+            pathLength--;
+            board.slide(blank);
+            if (t < min) {
+                min = t;
+            }
+        }
+        return min;
+    }
+
+    private void pushPath(int blankPosition) {
+        if (pathLength == path.length) {
+            int[] resized = new int[path.length * 2];
+            System.arraycopy(path, 0, resized, 0, pathLength);
+            path = resized;
+        }
+        path[pathLength++] = blankPosition;
+    }
+
+    // count one more expanded board; true once the budget is spent
+    private boolean outOfBudget() {
+        expanded++;
+        if (expanded > nodeBudget
+                || ((expanded & 1023) == 0 && System.nanoTime() > deadline)) {
+            budgetExceeded = true;
+        }
+        return budgetExceeded;
+    }
+
     // is the initial board solvable?
     public boolean isSolvable() {
         return solvable;
     }
 
-    // add neighbors of a search node's board to a game tree(MinPQ)
+    // did the search give up on a solvable board before finding a solution?
+    public boolean budgetExceeded() {
+        return budgetExceeded;
+    }
+
+    // add neighbors of a search node's board to a game tree.
+    // Boards already reached in as few moves are dropped, which also
+    // covers the grandparent board.
     private void treeUpdateNeighbors(searchNode minNode,
-                                     MinPQ<searchNode> gameTree,
+                                     BucketQueue<searchNode> gameTree,
                                      int solvableMoves) {
         Iterable<Board> neighbors = minNode.board.neighbors();
         for (Board neighbor : neighbors) {
+            Integer best = bestMoves.get(neighbor);
+            if (best != null && best <= solvableMoves) {
+                continue;
+            }
+            bestMoves.put(neighbor, solvableMoves);
             searchNode node = new searchNode(neighbor, solvableMoves, minNode);
-            if (minNode.last != null) {
-                if (!node.board.equals(minNode.last.board))
-                    gameTree.insert(node);
-            } else {
-                gameTree.insert(node);
+            gameTree.insert(node, node.priority, node.estimate);
+        }
+    }
+
+    // the solution as the directions the empty space moves in, one of
+    // L, R, U, D per move; null if unsolvable or out of budget
+    String moveString() {
+        if (!solvable || budgetExceeded) {
+            return null;
+        }
+        StringBuilder s = new StringBuilder(moves);
+        Board previous = null;
+        for (Board board : boardSequence) {
+            if (previous != null) {
+                for (int direction = 0; direction < 4; direction++) {
+                    if (previous.blankMove(direction) == board.blankPosition()) {
+                        s.append(MOVE_LETTERS.charAt(direction));
+                    }
+                }
             }
+            previous = board;
         }
+        return s.toString();
     }
 
     // min number of moves to solve initial board; -1 if unsolvable
+    // or out of budget
     public int moves() {
-        if (!solvable) {
+        if (!solvable || budgetExceeded) {
             return -1;
         }
         return moves;
     }
 
     // sequence of boards in a shortest solution; null if unsolvable
+    // or out of budget
     public Iterable<Board> solution() {
-        if (!solvable) {
+        if (!solvable || budgetExceeded) {
             return null;
         }
         return boardSequence;
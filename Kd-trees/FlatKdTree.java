@@ -0,0 +1,205 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/20/18
+//
+// Static 2d-tree stored as one flat array of primitive coordinates instead
+// of Node objects. The points are arranged so that the subtree over index
+// range [lo, hi) has its root at mid = (lo + hi) / 2, its left/bottom
+// subtree in [lo, mid) and its right/top subtree in [mid + 1, hi). So the
+// children of a node follow from its index, and the orientation from its
+// depth: vertical (split on x) at even depths, horizontal at odd ones.
+// Coordinates are interleaved, x of point i at 2i and y at 2i + 1, so a
+// node's point sits in one cache line, for 16 bytes per point overall.
+//
+// Points tying a node's coordinate can fall on either side of it, so
+// searches descend both ways on a tie.
+//*****************************************************************************
+
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.Queue;
+import edu.princeton.cs.algs4.RectHV;
+
+import java.util.Arrays;
+
+public class FlatKdTree {
+    private final double[] coords;
+    private final int size;
+
+    // construct the set of the given points
+    public FlatKdTree(Point2D[] points) {
+        if (points == null) throw new IllegalArgumentException("Null argument to FlatKdTree()");
+        Point2D[] a = points.clone();
+        for (Point2D p : a) {
+            if (p == null) throw new IllegalArgumentException("Null point in FlatKdTree()");
+        }
+
+        // drop repeated points
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (n == 0 || !a[i].equals(a[n - 1])) {
+                a[n++] = a[i];
+            }
+        }
+        size = n;
+        coords = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            coords[2 * i] = a[i].x();
+            coords[2 * i + 1] = a[i].y();
+        }
+        build(0, n, 0);
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // puts the median of [lo, hi) by the depth's coordinate at the middle
+    private void build(int lo, int hi, int axis) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        build(lo, mid, axis ^ 1);
+        build(mid + 1, hi, axis ^ 1);
+    }
+
+    // quickselect with 3-way partitioning on coordinate axis (0 for x,
+    // 1 for y): the point of rank k in [lo, hi] ends up at k
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = coords[2 * (lo + (hi - lo) / 2) + axis];
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double c = coords[2 * i + axis];
+                if (c < pivot) exchange(lt++, i++);
+                else if (c > pivot) exchange(i, gt--);
+                else i++;
+            }
+            if (k < lt) hi = lt - 1;
+            else if (k > gt) lo = gt + 1;
+            else return;
+        }
+    }
+
+    private void exchange(int i, int j) {
+        double x = coords[2 * i];
+        double y = coords[2 * i + 1];
+        coords[2 * i] = coords[2 * j];
+        coords[2 * i + 1] = coords[2 * j + 1];
+        coords[2 * j] = x;
+        coords[2 * j + 1] = y;
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        if (p == null) throw new IllegalArgumentException("Null argument to contains()");
+        return contains(0, size, 0, p.x(), p.y());
+    }
+
+    private boolean contains(int lo, int hi, int axis, double x, double y) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (coords[2 * mid] == x && coords[2 * mid + 1] == y) {
+                return true;
+            }
+            double c = (axis == 0) ? x : y;
+            double split = coords[2 * mid + axis];
+            if (c < split) {
+                hi = mid;
+            } else if (c > split) {
+                lo = mid + 1;
+            } else {
+                // ties may sit on both sides
+                return contains(lo, mid, axis ^ 1, x, y)
+                        || contains(mid + 1, hi, axis ^ 1, x, y);
+            }
+            axis ^= 1;
+        }
+        return false;
+    }
+
+    // all points that are inside the rectangle (or on the boundary)
+    public Iterable<Point2D> range(RectHV rect) {
+        if (rect == null)
+            throw new IllegalArgumentException("null argument to range()");
+        Queue<Point2D> pointsInRange = new Queue<>();
+        findRange(pointsInRange, rect, 0, size, 0);
+        return pointsInRange;
+    }
+
+    private void findRange(Queue<Point2D> q, RectHV rect, int lo, int hi, int axis) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double x = coords[2 * mid];
+        double y = coords[2 * mid + 1];
+        if (x >= rect.xmin() && x <= rect.xmax() && y >= rect.ymin() && y <= rect.ymax()) {
+            q.enqueue(new Point2D(x, y));
+        }
+
+        // the left side holds coordinates <= split, the right side >= split
+        double split = coords[2 * mid + axis];
+        double min = (axis == 0) ? rect.xmin() : rect.ymin();
+        double max = (axis == 0) ? rect.xmax() : rect.ymax();
+        if (min <= split) {
+            findRange(q, rect, lo, mid, axis ^ 1);
+        }
+        if (max >= split) {
+            findRange(q, rect, mid + 1, hi, axis ^ 1);
+        }
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        if (p == null)
+            throw new IllegalArgumentException("null argument to nearest()");
+        if (size == 0) {
+            return null;
+        }
+        int best = findNearest(p.x(), p.y(), 0, size, 0, 0);
+        return new Point2D(coords[2 * best], coords[2 * best + 1]);
+    }
+
+    /* Returns the index of the closest point to (x, y) among [lo, hi) and
+       best. Searches the side of the split the query is on first, then the
+       other side only if the split line is closer than the best point so
+       far, since no point across the line can be closer than the line.
+     */
+    private int findNearest(double x, double y, int lo, int hi, int axis, int best) {
+        if (lo >= hi) {
+            return best;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (distanceSquared(mid, x, y) < distanceSquared(best, x, y)) {
+            best = mid;
+        }
+        double diff = ((axis == 0) ? x : y) - coords[2 * mid + axis];
+        if (diff < 0) {
+            best = findNearest(x, y, lo, mid, axis ^ 1, best);
+            if (diff * diff <= distanceSquared(best, x, y))
+                best = findNearest(x, y, mid + 1, hi, axis ^ 1, best);
+        } else {
+            best = findNearest(x, y, mid + 1, hi, axis ^ 1, best);
+            if (diff * diff <= distanceSquared(best, x, y))
+                best = findNearest(x, y, lo, mid, axis ^ 1, best);
+        }
+        return best;
+    }
+
+    private double distanceSquared(int i, double x, double y) {
+        double dx = coords[2 * i] - x;
+        double dy = coords[2 * i + 1] - y;
+        return dx * dx + dy * dy;
+    }
+}
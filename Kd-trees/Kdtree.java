@@ -4,33 +4,112 @@
 // Date: 10/20/18
 //
 // Uses a Kd (K-dimensional) tree to solve the problem of range search
-// and nearest neighbor search.
+// and nearest neighbor search. A tree can be grown one point at a time, or
+// bulk built balanced from an array of points by splitting each level at
+// the median point, found by quickselect. Queries keep their search state
+// on the stack, so any number of threads may query a tree at once as long
+// as no thread is inserting into it. Large batches of nearest and range
+// queries can be answered in parallel into flat coordinate arrays, with
+// the queries visited in Z-order so that consecutive ones touch the same
+// part of the tree. Every node stores the size of its subtree, so a range
+// count adds up whole subtrees inside the rectangle without visiting them,
+// and a lazy range search finds matches only as the caller asks for them.
+//
+// Points can be deleted too. A deleted point's node takes over the point
+// of its subtree that is smallest on the node's coordinate, which is then
+// deleted from below in turn. Finding that point searches both children of
+// the nodes splitting on the other coordinate, so it costs O(sqrt s) in a
+// subtree of s points, O(sqrt n) at worst for the root.
+//
+// The tree stays balanced under any mix of inserts and deletes by partial
+// rebuilding, as in a scapegoat tree: after each update, every subtree on
+// the changed paths with a child holding more than ALPHA of its points is
+// bulk built again. A subtree of s points only gets that far out of
+// balance after Omega(s) updates below it, so rebuilding costs amortized
+// O(log^2 n) per update and the height stays logarithmic.
+//
+// A tree can be saved as a snapshot that MappedKdTree queries in place from
+// a memory-mapped file:
+//
+//   int magic, int n,
+//   n pairs of doubles x, y of the points in pre-order,
+//   n ints, the size of each point's left/bottom subtree, in pre-order.
+//
+// The root splits on x and the orientation alternates by depth.
 //*****************************************************************************
 
+import edu.princeton.cs.algs4.MaxPQ;
 import edu.princeton.cs.algs4.Point2D;
 import edu.princeton.cs.algs4.Queue;
 import edu.princeton.cs.algs4.RectHV;
+import edu.princeton.cs.algs4.Stack;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
 
 public class KdTree {
     private int size;
     private Node root;
-    private Point2D champion;
-    private double championDistance;
 
     private static final boolean VERTICAL = true;
     private static final boolean HORIZONTAL = false;
 
+    // subtrees smaller than this are bulk built on the calling thread
+    private static final int PARALLEL_CUTOFF = 1 << 13;
+
+    // batches of fewer queries than this are answered on the calling thread
+    private static final int QUERY_CUTOFF = 1 << 10;
+
+    // bits per coordinate of the Z-order curve used to sort batch queries
+    private static final int MORTON_BITS = 15;
+
+    // a subtree is rebuilt when one child holds more than this share of it
+    private static final double ALPHA = 0.75;
+
+    // the root's region is the whole plane, so points need not lie in the
+    // unit square
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    // first int of a snapshot file, "KDT1"
+    static final int SNAPSHOT_MAGIC = 0x4B445431;
+
     private static class Node {
         private Point2D p;      // the point
         private Node lb;        // the left/bottom subtree
         private Node rt;        // the right/top subtree
         private boolean orientation;
+        private int size;       // number of points in the subtree
 
         public Node(Point2D p, boolean orientation) {
             this.p = p;
             lb = null;
             rt = null;
             this.orientation = orientation;
+            size = 1;
+        }
+    }
+
+    // a point found by a k nearest neighbor search, ordered by distance
+    private static class Candidate implements Comparable<Candidate> {
+        private final Point2D p;
+        private final double distance;    // squared distance to the query
+
+        public Candidate(Point2D p, double distance) {
+            this.p = p;
+            this.distance = distance;
+        }
+
+        public int compareTo(Candidate that) {
+            return Double.compare(this.distance, that.distance);
         }
     }
 
@@ -38,8 +117,135 @@ public class KdTree {
     public KdTree() {
         size = 0;
         root = null;
-        champion = null;
-        championDistance = Double.MAX_VALUE;
+    }
+
+    // construct a balanced set of the given points
+    public KdTree(Point2D[] points) {
+        this(points, false);
+    }
+
+    // construct a balanced set of the given points, building the two halves
+    // of large subtrees in parallel if asked to
+    public KdTree(Point2D[] points, boolean parallel) {
+        this();
+        if (points == null) throw new IllegalArgumentException("Null argument to KdTree()");
+        Point2D[] a = points.clone();
+        for (Point2D p : a) {
+            if (p == null) throw new IllegalArgumentException("Null point in KdTree()");
+        }
+
+        // drop repeated points, keeping the set semantics of insert()
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (n == 0 || !a[i].equals(a[n - 1])) {
+                a[n++] = a[i];
+            }
+        }
+        size = n;
+        if (parallel && n >= PARALLEL_CUTOFF) {
+            root = ForkJoinPool.commonPool().invoke(new BuildTask(a, 0, n, VERTICAL));
+        } else {
+            root = build(a, 0, n, VERTICAL);
+        }
+    }
+
+    // builds the subtree of a[lo, hi) splitting on orientation. The root is
+    // a point with the median coordinate; like put(), points with a smaller
+    // coordinate go left and the others right, so contains() finds them.
+    private static Node build(Point2D[] a, int lo, int hi, boolean orientation) {
+        if (lo >= hi) {
+            return null;
+        }
+        int k = split(a, lo, hi, orientation);
+        Node t = new Node(a[k], orientation);
+        t.size = hi - lo;
+        orientation = (orientation == VERTICAL) ? HORIZONTAL : VERTICAL;
+        t.lb = build(a, lo, k, orientation);
+        t.rt = build(a, k + 1, hi, orientation);
+        return t;
+    }
+
+    // bulk builds the two halves of a subtree as separate fork-join tasks
+    private static class BuildTask extends RecursiveTask<Node> {
+        private final Point2D[] a;
+        private final int lo;
+        private final int hi;
+        private final boolean orientation;
+
+        BuildTask(Point2D[] a, int lo, int hi, boolean orientation) {
+            this.a = a;
+            this.lo = lo;
+            this.hi = hi;
+            this.orientation = orientation;
+        }
+
+        protected Node compute() {
+            if (hi - lo < PARALLEL_CUTOFF) {
+                return build(a, lo, hi, orientation);
+            }
+            int k = split(a, lo, hi, orientation);
+            Node t = new Node(a[k], orientation);
+            t.size = hi - lo;
+            boolean next = (orientation == VERTICAL) ? HORIZONTAL : VERTICAL;
+            BuildTask left = new BuildTask(a, lo, k, next);
+            left.fork();
+            t.rt = new BuildTask(a, k + 1, hi, next).compute();
+            t.lb = left.join();
+            return t;
+        }
+    }
+
+    /* Rearranges a[lo, hi) around the median coordinate for orientation and
+       returns the index k of the split point: a[lo, k) have a smaller
+       coordinate and a[k + 1, hi) an equal or larger one.
+     */
+    private static int split(Point2D[] a, int lo, int hi, boolean orientation) {
+        int mid = (lo + hi) >>> 1;
+        select(a, lo, hi - 1, mid, orientation);
+        double median = coordinate(a[mid], orientation);
+
+        // points left of mid tying the median move next to it, and the
+        // first of them becomes the split point
+        int k = lo;
+        for (int i = lo; i < mid; i++) {
+            if (coordinate(a[i], orientation) < median) {
+                exchange(a, i, k++);
+            }
+        }
+        exchange(a, k, mid);
+        return k;
+    }
+
+    // quickselect with 3-way partitioning: puts the point of rank k in
+    // a[lo..hi] by coordinate at a[k], smaller ones before, larger after
+    private static void select(Point2D[] a, int lo, int hi, int k, boolean orientation) {
+        while (lo < hi) {
+            double pivot = coordinate(a[lo + (hi - lo) / 2], orientation);
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double c = coordinate(a[i], orientation);
+                if (c < pivot) exchange(a, lt++, i++);
+                else if (c > pivot) exchange(a, i, gt--);
+                else i++;
+            }
+            // a[lt..gt] now all equal the pivot
+            if (k < lt) hi = lt - 1;
+            else if (k > gt) lo = gt + 1;
+            else return;
+        }
+    }
+
+    private static double coordinate(Point2D p, boolean orientation) {
+        return (orientation == VERTICAL) ? p.x() : p.y();
+    }
+
+    private static void exchange(Point2D[] a, int i, int j) {
+        Point2D swap = a[i];
+        a[i] = a[j];
+        a[j] = swap;
     }
 
     // is the set empty?
@@ -59,6 +265,92 @@ public class KdTree {
         }
     }
 
+    // remove the point from the set (if it is in the set)
+    public void delete(Point2D p) {
+        if (p == null) throw new IllegalArgumentException("Null argument to delete()");
+        if (contains(p)) {
+            root = remove(root, p);
+            size--;
+        }
+    }
+
+    /* Removes p, which is in the subtree at t. The node holding p keeps its
+       place and takes the point m with the smallest coordinate (on its own
+       orientation) from its right/top subtree, which is then removed from
+       there: m is no larger than any point left in that subtree, and the
+       left/bottom points were all smaller than p, which is no larger than
+       m. With no right/top subtree, m comes from the left/bottom one, which
+       becomes the right/top subtree, as every point in it is at least m.
+     */
+    private Node remove(Node t, Point2D p) {
+        int cmp = switchCompare(t, p.x(), p.y());
+        t.size--;
+        if (cmp >= 0 && t.p.equals(p)) {
+            if (t.rt != null) {
+                t.p = minNode(t.rt, t.orientation).p;
+                t.rt = remove(t.rt, t.p);
+            } else if (t.lb != null) {
+                t.p = minNode(t.lb, t.orientation).p;
+                t.rt = remove(t.lb, t.p);
+                t.lb = null;
+            } else {
+                return null;
+            }
+        } else if (cmp < 0) {
+            t.lb = remove(t.lb, p);
+        } else {
+            t.rt = remove(t.rt, p);
+        }
+        return balance(t);
+    }
+
+    // a point of the subtree at t with the smallest coordinate on
+    // orientation; null if the subtree is empty
+    private static Node minNode(Node t, boolean orientation) {
+        if (t == null) {
+            return null;
+        }
+        if (t.orientation == orientation) {
+            // the right/top points are no smaller than t's
+            return (t.lb == null) ? t : minNode(t.lb, orientation);
+        }
+        Node min = t;
+        Node lb = minNode(t.lb, orientation);
+        Node rt = minNode(t.rt, orientation);
+        if (lb != null && coordinate(lb.p, orientation) < coordinate(min.p, orientation)) {
+            min = lb;
+        }
+        if (rt != null && coordinate(rt.p, orientation) < coordinate(min.p, orientation)) {
+            min = rt;
+        }
+        return min;
+    }
+
+    // t, or t bulk built again if one child holds more than ALPHA of it
+    private static Node balance(Node t) {
+        if (t == null || Math.max(size(t.lb), size(t.rt)) <= ALPHA * t.size) {
+            return t;
+        }
+        Point2D[] a = new Point2D[t.size];
+        collect(t, a, 0);
+        return build(a, 0, a.length, t.orientation);
+    }
+
+    private static int size(Node t) {
+        return (t == null) ? 0 : t.size;
+    }
+
+    // copy the points of the subtree at t to a from index i, returning the
+    // index after the last one copied
+    private static int collect(Node t, Point2D[] a, int i) {
+        if (t == null) {
+            return i;
+        }
+        a[i++] = t.p;
+        i = collect(t.lb, a, i);
+        return collect(t.rt, a, i);
+    }
+
     private Node put(Node t, Point2D p, boolean orientation) {
         if (t == null) {
             size++;
@@ -68,12 +360,14 @@ public class KdTree {
         int cmp = switchCompare(t, p.x(), p.y());
         orientation = (orientation == VERTICAL) ? HORIZONTAL : VERTICAL;
 
+        // insert() only calls put() for a new point, so the subtree grows
+        t.size++;
         if (cmp < 0) {
             t.lb = put(t.lb, p, orientation);
         } else {
             t.rt = put(t.rt, p, orientation);
         }
-        return t;
+        return balance(t);
     }
 
     // compare on x if orientation is vertical (1) or y if horizontal (0)
@@ -147,6 +441,107 @@ public class KdTree {
         }
     }
 
+    // the points inside the rectangle (or on the boundary), found one at a
+    // time as the iterator is advanced, so a caller that stops early does
+    // not pay for the rest; the set must not change during the iteration
+    public Iterable<Point2D> lazyRange(final RectHV rect) {
+        if (rect == null)
+            throw new IllegalArgumentException("null argument to lazyRange()");
+        return () -> new RangeIterator(rect);
+    }
+
+    /* Walks the tree depth first with an explicit stack of subtrees still
+       to search, pruned like findRange(), and stops at each point in the
+       rectangle until next() hands it out.
+     */
+    private class RangeIterator implements Iterator<Point2D> {
+        private final RectHV rect;
+        private Node[] pending = new Node[16];
+        private int depth;
+        private Point2D next;
+
+        RangeIterator(RectHV rect) {
+            this.rect = rect;
+            if (root != null) {
+                pending[depth++] = root;
+            }
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Point2D next() {
+            if (next == null) {
+                throw new NoSuchElementException("No more points in range");
+            }
+            Point2D p = next;
+            advance();
+            return p;
+        }
+
+        // find the next point in the rectangle, or leave null
+        private void advance() {
+            next = null;
+            while (next == null && depth > 0) {
+                Node t = pending[--depth];
+                pending[depth] = null;
+                int cmpMin = switchCompare(t, rect.xmin(), rect.ymin());
+                int cmpMax = switchCompare(t, rect.xmax(), rect.ymax());
+                if (!(cmpMin < 0 && cmpMax < 0)) push(t.rt);
+                if (!(cmpMin > 0 && cmpMax > 0)) push(t.lb);
+                if (rect.contains(t.p)) {
+                    next = t.p;
+                }
+            }
+        }
+
+        private void push(Node t) {
+            if (t == null) {
+                return;
+            }
+            if (depth == pending.length) {
+                pending = Arrays.copyOf(pending, 2 * depth);
+            }
+            pending[depth++] = t;
+        }
+    }
+
+    // number of points inside the rectangle (or on the boundary)
+    public int count(RectHV rect) {
+        if (rect == null)
+            throw new IllegalArgumentException("null argument to count()");
+        return countRange(rect, root, -INFINITY, -INFINITY, INFINITY, INFINITY);
+    }
+
+    /* Counts the points of the subtree at t, whose points all lie in
+       [xmin, xmax] x [ymin, ymax], inside rect. A subtree whose region is
+       inside rect counts as its stored size without being visited, and one
+       whose region misses rect counts as 0, so only the subtrees straddling
+       the rectangle's edges are searched.
+     */
+    private int countRange(RectHV rect, Node t, double xmin, double ymin,
+                           double xmax, double ymax) {
+        if (t == null || xmin > rect.xmax() || xmax < rect.xmin()
+                || ymin > rect.ymax() || ymax < rect.ymin()) {
+            return 0;
+        }
+        if (xmin >= rect.xmin() && xmax <= rect.xmax()
+                && ymin >= rect.ymin() && ymax <= rect.ymax()) {
+            return t.size;
+        }
+        int count = rect.contains(t.p) ? 1 : 0;
+        if (t.orientation == VERTICAL) {
+            count += countRange(rect, t.lb, xmin, ymin, t.p.x(), ymax);
+            count += countRange(rect, t.rt, t.p.x(), ymin, xmax, ymax);
+        } else {
+            count += countRange(rect, t.lb, xmin, ymin, xmax, t.p.y());
+            count += countRange(rect, t.rt, xmin, t.p.y(), xmax, ymax);
+        }
+        return count;
+    }
+
     // a nearest neighbor in the set to point p; null if the set is empty
     public Point2D nearest(Point2D p) {
         if (p == null)
@@ -154,31 +549,25 @@ public class KdTree {
         if (root == null) {
             return null;
         }
-        championDistance = Double.MAX_VALUE;
-        findNearest(p, root, new RectHV(0.0, 0.0, 1.0, 1.0));
-        return champion;
+        return findNearest(p.x(), p.y(), root, -INFINITY, -INFINITY, INFINITY, INFINITY, root.p);
     }
 
-    private RectHV updateRect(boolean orientation, int cmp, RectHV oldRect, Node t) {
-        double xmin = oldRect.xmin();
-        double xmax = oldRect.xmax();
-        double ymin = oldRect.ymin();
-        double ymax = oldRect.ymax();
+    // squared distance from (x, y) to the rectangle [xmin, xmax] x [ymin, ymax]
+    private static double distanceSquaredTo(double x, double y, double xmin, double ymin,
+                                            double xmax, double ymax) {
+        double dx = 0.0;
+        double dy = 0.0;
+        if (x < xmin) dx = x - xmin;
+        else if (x > xmax) dx = x - xmax;
+        if (y < ymin) dy = y - ymin;
+        else if (y > ymax) dy = y - ymax;
+        return dx * dx + dy * dy;
+    }
 
-        if (orientation == VERTICAL) {
-            if (cmp > 0 || cmp == 0) {
-                xmin = t.p.x();
-            } else {
-                xmax = t.p.x();
-            }
-        } else {
-            if (cmp > 0 || cmp == 0) {
-                ymin = t.p.y();
-            } else {
-                ymax = t.p.y();
-            }
-        }
-        return new RectHV(xmin, ymin, xmax, ymax);
+    private static double distanceSquaredTo(double x, double y, Point2D p) {
+        double dx = p.x() - x;
+        double dy = p.y() - y;
+        return dx * dx + dy * dy;
     }
 
     /*Nearest-neighbor search. To find a closest point to a given query
@@ -190,34 +579,346 @@ public class KdTree {
       closer than the best one found so far. The effectiveness of the pruning rule
       depends on quickly finding a nearby point. \
       Explanation credit @http://coursera.cs.princeton.edu/algs4/assignments/kdtree.html
+
+      The champion is passed down and returned rather than kept in fields,
+      so concurrent searches never share state. The node's rectangle is
+      passed as its four bounds, so a search allocates nothing.
      */
-    private void findNearest(Point2D query, Node t, RectHV rect) {
+    private Point2D findNearest(double x, double y, Node t, double xmin, double ymin,
+                                double xmax, double ymax, Point2D champion) {
         if (t == null) {
-            return;
+            return champion;
         }
 
-        double queryDistance = t.p.distanceSquaredTo(query);
+        double championDistance = distanceSquaredTo(x, y, champion);
+        double queryDistance = distanceSquaredTo(x, y, t.p);
         if (queryDistance < championDistance) {
             champion = t.p;
             championDistance = queryDistance;
         }
-        int cmp = switchCompare(t, query.x(), query.y());
+        int cmp = switchCompare(t, x, y);
 
-        // figure out rect for a point
-        RectHV leftRect = updateRect(t.orientation, -1, rect, t);
-        RectHV rightRect = updateRect(t.orientation, 1, rect, t);
+        // the left/bottom rectangle ends at the node's line, where the
+        // right/top one starts
+        double split = (t.orientation == VERTICAL) ? t.p.x() : t.p.y();
+        double leftXmax = (t.orientation == VERTICAL) ? split : xmax;
+        double leftYmax = (t.orientation == VERTICAL) ? ymax : split;
+        double rightXmin = (t.orientation == VERTICAL) ? split : xmin;
+        double rightYmin = (t.orientation == VERTICAL) ? ymin : split;
         if (cmp < 0) {
             if (t.lb != null) {
-                findNearest(query, t.lb, leftRect);
+                champion = findNearest(x, y, t.lb, xmin, ymin, leftXmax, leftYmax, champion);
+                championDistance = distanceSquaredTo(x, y, champion);
             }
-            if (t.rt != null && rightRect.distanceSquaredTo(query) <= championDistance)
-                findNearest(query, t.rt, rightRect);
+            if (t.rt != null && distanceSquaredTo(x, y, rightXmin, rightYmin, xmax, ymax)
+                    <= championDistance)
+                champion = findNearest(x, y, t.rt, rightXmin, rightYmin, xmax, ymax, champion);
         } else {
             if (t.rt != null) {
-                findNearest(query, t.rt, rightRect);
+                champion = findNearest(x, y, t.rt, rightXmin, rightYmin, xmax, ymax, champion);
+                championDistance = distanceSquaredTo(x, y, champion);
             }
-            if (t.lb != null && leftRect.distanceSquaredTo(query) <= championDistance)
-                findNearest(query, t.lb, leftRect);
+            if (t.lb != null && distanceSquaredTo(x, y, xmin, ymin, leftXmax, leftYmax)
+                    <= championDistance)
+                champion = findNearest(x, y, t.lb, xmin, ymin, leftXmax, leftYmax, champion);
+        }
+        return champion;
+    }
+
+    // the k points in the set nearest to p, nearest first (fewer if the
+    // set has fewer than k points)
+    public Iterable<Point2D> nearest(Point2D p, int k) {
+        if (p == null)
+            throw new IllegalArgumentException("null argument to nearest()");
+        if (k < 0)
+            throw new IllegalArgumentException("negative k in nearest()");
+        MaxPQ<Candidate> candidates = new MaxPQ<>();
+        if (root != null && k > 0) {
+            findNearest(p.x(), p.y(), k, root, -INFINITY, -INFINITY, INFINITY, INFINITY,
+                    candidates);
+        }
+        Stack<Point2D> nearest = new Stack<>();
+        while (!candidates.isEmpty()) {
+            nearest.push(candidates.delMax().p);
+        }
+        return nearest;
+    }
+
+    /* k nearest neighbor search. Same pruning rule as findNearest(), with
+       the k closest points so far kept in a max-heap: once it holds k
+       points, a node is skipped if its rectangle is farther than the
+       farthest of them, and a closer point replaces the farthest.
+     */
+    private void findNearest(double x, double y, int k, Node t, double xmin, double ymin,
+                             double xmax, double ymax, MaxPQ<Candidate> candidates) {
+        if (t == null) {
+            return;
+        }
+        if (candidates.size() == k && distanceSquaredTo(x, y, xmin, ymin, xmax, ymax)
+                > candidates.max().distance) {
+            return;
+        }
+
+        double queryDistance = distanceSquaredTo(x, y, t.p);
+        if (candidates.size() < k) {
+            candidates.insert(new Candidate(t.p, queryDistance));
+        } else if (queryDistance < candidates.max().distance) {
+            candidates.delMax();
+            candidates.insert(new Candidate(t.p, queryDistance));
+        }
+
+        int cmp = switchCompare(t, x, y);
+        double split = (t.orientation == VERTICAL) ? t.p.x() : t.p.y();
+        double leftXmax = (t.orientation == VERTICAL) ? split : xmax;
+        double leftYmax = (t.orientation == VERTICAL) ? ymax : split;
+        double rightXmin = (t.orientation == VERTICAL) ? split : xmin;
+        double rightYmin = (t.orientation == VERTICAL) ? ymin : split;
+        if (cmp < 0) {
+            findNearest(x, y, k, t.lb, xmin, ymin, leftXmax, leftYmax, candidates);
+            findNearest(x, y, k, t.rt, rightXmin, rightYmin, xmax, ymax, candidates);
+        } else {
+            findNearest(x, y, k, t.rt, rightXmin, rightYmin, xmax, ymax, candidates);
+            findNearest(x, y, k, t.lb, xmin, ymin, leftXmax, leftYmax, candidates);
+        }
+    }
+
+    // all points within distance r of p (or exactly r away)
+    public Iterable<Point2D> withinRadius(Point2D p, double r) {
+        if (p == null)
+            throw new IllegalArgumentException("null argument to withinRadius()");
+        if (!(r >= 0))
+            throw new IllegalArgumentException("negative radius in withinRadius()");
+        Queue<Point2D> pointsInRadius = new Queue<>();
+        findWithinRadius(pointsInRadius, p.x(), p.y(), r * r, root,
+                -INFINITY, -INFINITY, INFINITY, INFINITY);
+        return pointsInRadius;
+    }
+
+    // collect the points within squared distance r2 of (x, y), skipping
+    // nodes whose rectangle is farther than that
+    private void findWithinRadius(Queue<Point2D> q, double x, double y, double r2, Node t,
+                                  double xmin, double ymin, double xmax, double ymax) {
+        if (t == null || distanceSquaredTo(x, y, xmin, ymin, xmax, ymax) > r2) {
+            return;
+        }
+        if (distanceSquaredTo(x, y, t.p) <= r2) {
+            q.enqueue(t.p);
+        }
+        if (t.orientation == VERTICAL) {
+            findWithinRadius(q, x, y, r2, t.lb, xmin, ymin, t.p.x(), ymax);
+            findWithinRadius(q, x, y, r2, t.rt, t.p.x(), ymin, xmax, ymax);
+        } else {
+            findWithinRadius(q, x, y, r2, t.lb, xmin, ymin, xmax, t.p.y());
+            findWithinRadius(q, x, y, r2, t.rt, xmin, t.p.y(), xmax, ymax);
+        }
+    }
+
+    /* Batch nearest neighbor search. Writes the nearest neighbor of
+       queries[i] to coords[2i] (x) and coords[2i + 1] (y), or NaN for both
+       if the set is empty. Queries are answered in parallel, and no objects
+       are allocated per query.
+     */
+    public void nearest(Point2D[] queries, final double[] coords) {
+        if (queries == null || coords == null)
+            throw new IllegalArgumentException("null argument to nearest()");
+        if (coords.length < 2 * (long) queries.length)
+            throw new IllegalArgumentException("coords too short for the queries");
+        final double[] qx = new double[queries.length];
+        final double[] qy = new double[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i] == null)
+                throw new IllegalArgumentException("null query in nearest()");
+            qx[i] = queries[i].x();
+            qy[i] = queries[i].y();
+        }
+
+        final Node r = root;
+        runAll(zOrder(qx, qy), i -> {
+            if (r == null) {
+                coords[2 * i] = Double.NaN;
+                coords[2 * i + 1] = Double.NaN;
+                return;
+            }
+            Point2D nearest = findNearest(qx[i], qy[i], r,
+                    -INFINITY, -INFINITY, INFINITY, INFINITY, r.p);
+            coords[2 * i] = nearest.x();
+            coords[2 * i + 1] = nearest.y();
+        });
+    }
+
+    /* Batch range search. The points inside rects[i] are written to the
+       returned array as x, y pairs, from index 2 * offsets[i] up to
+       2 * offsets[i + 1]; offsets must have room for rects.length + 1
+       entries and is overwritten. The rectangles are first counted in
+       parallel to size the result exactly, then filled in parallel.
+     */
+    public double[] range(final RectHV[] rects, final int[] offsets) {
+        if (rects == null || offsets == null)
+            throw new IllegalArgumentException("null argument to range()");
+        if (offsets.length < rects.length + 1)
+            throw new IllegalArgumentException("offsets too short for the rectangles");
+        double[] cx = new double[rects.length];
+        double[] cy = new double[rects.length];
+        for (int i = 0; i < rects.length; i++) {
+            if (rects[i] == null)
+                throw new IllegalArgumentException("null rectangle in range()");
+            cx[i] = (rects[i].xmin() + rects[i].xmax()) / 2;
+            cy[i] = (rects[i].ymin() + rects[i].ymax()) / 2;
+        }
+        int[] order = zOrder(cx, cy);
+
+        final Node r = root;
+        runAll(order, i -> offsets[i + 1] = count(rects[i]));
+        offsets[0] = 0;
+        for (int i = 0; i < rects.length; i++) {
+            if ((long) offsets[i] + offsets[i + 1] > Integer.MAX_VALUE / 2)
+                throw new IllegalArgumentException("too many points in range()");
+            offsets[i + 1] += offsets[i];
+        }
+
+        final double[] coords = new double[2 * offsets[rects.length]];
+        runAll(order, i -> fillRange(coords, 2 * offsets[i], rects[i], r));
+        return coords;
+    }
+
+    // write the points of the subtree at t inside rect to coords from
+    // index pos, returning the index after the last one written
+    private int fillRange(double[] coords, int pos, RectHV rect, Node t) {
+        if (t == null) {
+            return pos;
+        }
+        if (rect.contains(t.p)) {
+            coords[pos++] = t.p.x();
+            coords[pos++] = t.p.y();
+        }
+        int cmpMin = switchCompare(t, rect.xmin(), rect.ymin());
+        int cmpMax = switchCompare(t, rect.xmax(), rect.ymax());
+        if (cmpMin > 0 && cmpMax > 0) {
+            pos = fillRange(coords, pos, rect, t.rt);
+        } else if (cmpMin < 0 && cmpMax < 0) {
+            pos = fillRange(coords, pos, rect, t.lb);
+        } else {
+            pos = fillRange(coords, pos, rect, t.rt);
+            pos = fillRange(coords, pos, rect, t.lb);
+        }
+        return pos;
+    }
+
+    /* Indices of the points (x[i], y[i]) sorted along a Z-order (Morton)
+       curve over their bounding box: the bits of the two scaled coordinates
+       are interleaved, so points close on the curve are close in the plane
+       and their searches walk mostly the same nodes. Each code is sorted
+       together with its index packed in the low bits of a long.
+     */
+    private static int[] zOrder(double[] x, double[] y) {
+        double xmin = INFINITY;
+        double ymin = INFINITY;
+        double xmax = -INFINITY;
+        double ymax = -INFINITY;
+        for (int i = 0; i < x.length; i++) {
+            xmin = Math.min(xmin, x[i]);
+            ymin = Math.min(ymin, y[i]);
+            xmax = Math.max(xmax, x[i]);
+            ymax = Math.max(ymax, y[i]);
+        }
+        long[] keys = new long[x.length];
+        for (int i = 0; i < x.length; i++) {
+            long code = (spread(scale(x[i], xmin, xmax)) << 1)
+                    | spread(scale(y[i], ymin, ymax));
+            keys[i] = (code << 32) | i;
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    // coordinate c in [min, max] scaled to MORTON_BITS bits
+    private static int scale(double c, double min, double max) {
+        double t = (c - min) / (max - min);
+        if (!(t > 0.0)) return 0;        // also NaN, and infinite ranges
+        if (t >= 1.0) return (1 << MORTON_BITS) - 1;
+        return (int) (t * (1 << MORTON_BITS));
+    }
+
+    // spread the bits of v out to the even bit positions
+    private static long spread(int v) {
+        long b = v;
+        b = (b | (b << 8)) & 0x00FF00FFL;
+        b = (b | (b << 4)) & 0x0F0F0F0FL;
+        b = (b | (b << 2)) & 0x33333333L;
+        b = (b | (b << 1)) & 0x55555555L;
+        return b;
+    }
+
+    // run query on every index of order, splitting large batches across
+    // the common fork-join pool
+    private static void runAll(int[] order, IntConsumer query) {
+        if (order.length < QUERY_CUTOFF) {
+            for (int i : order) {
+                query.accept(i);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new QueryTask(order, 0, order.length, query));
+        }
+    }
+
+    // answers the queries order[lo, hi), halving the range until it is small
+    private static class QueryTask extends RecursiveAction {
+        private final int[] order;
+        private final int lo;
+        private final int hi;
+        private final IntConsumer query;
+
+        QueryTask(int[] order, int lo, int hi, IntConsumer query) {
+            this.order = order;
+            this.lo = lo;
+            this.hi = hi;
+            this.query = query;
+        }
+
+        protected void compute() {
+            if (hi - lo <= QUERY_CUTOFF) {
+                for (int i = lo; i < hi; i++) {
+                    query.accept(order[i]);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new QueryTask(order, lo, mid, query),
+                    new QueryTask(order, mid, hi, query));
+        }
+    }
+
+    // write the tree in the snapshot format read by MappedKdTree
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(size);
+            writePoints(out, root);
+            writeLeftSizes(out, root);
+        }
+    }
+
+    private static void writePoints(DataOutputStream out, Node t) throws IOException {
+        if (t == null) {
+            return;
+        }
+        out.writeDouble(t.p.x());
+        out.writeDouble(t.p.y());
+        writePoints(out, t.lb);
+        writePoints(out, t.rt);
+    }
+
+    private static void writeLeftSizes(DataOutputStream out, Node t) throws IOException {
+        if (t == null) {
+            return;
         }
+        out.writeInt(size(t.lb));
+        writeLeftSizes(out, t.lb);
+        writeLeftSizes(out, t.rt);
     }
 }
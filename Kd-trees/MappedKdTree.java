@@ -0,0 +1,208 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/20/18
+//
+// Read-only 2d-tree queried directly from a memory-mapped snapshot written
+// by KdTree.save(), without building any nodes. In the pre-order layout a
+// node at index i with a subtree of s points has its left/bottom subtree at
+// [i + 1, i + 1 + left) and its right/top subtree at [i + 1 + left, i + s),
+// where left is the stored size of its left subtree. Loading only checks
+// the header and file length, so it takes the same time for any tree; the
+// pages are read as queries touch them and are shared through the page
+// cache by every process mapping the same file.
+//
+// Queries only use absolute reads of the buffer, so any number of threads
+// may query a tree at once.
+//*****************************************************************************
+
+import edu.princeton.cs.algs4.Point2D;
+import edu.princeton.cs.algs4.Queue;
+import edu.princeton.cs.algs4.RectHV;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedKdTree {
+    private static final int HEADER_BYTES = 8;
+    private static final int POINT_BYTES = 16;
+    private static final int SIZE_BYTES = 4;
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int leftSizes;    // offset of the left subtree sizes
+
+    private MappedKdTree(ByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+        this.leftSizes = HEADER_BYTES + POINT_BYTES * size;
+    }
+
+    // memory-map a snapshot written by KdTree.save()
+    public static MappedKdTree load(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Kd-tree snapshot too large to map: " + filename);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != KdTree.SNAPSHOT_MAGIC) {
+                throw new IOException("Not a kd-tree snapshot: " + filename);
+            }
+            int n = buffer.getInt(4);
+            if (n < 0 || HEADER_BYTES + (long) (POINT_BYTES + SIZE_BYTES) * n != buffer.limit()) {
+                throw new IOException("Truncated kd-tree snapshot: " + filename);
+            }
+            // the mapping stays valid after the channel is closed
+            return new MappedKdTree(buffer, n);
+        }
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private double x(int i) {
+        return buffer.getDouble(HEADER_BYTES + POINT_BYTES * i);
+    }
+
+    private double y(int i) {
+        return buffer.getDouble(HEADER_BYTES + POINT_BYTES * i + 8);
+    }
+
+    private int leftSize(int i) {
+        return buffer.getInt(leftSizes + SIZE_BYTES * i);
+    }
+
+    // does the set contain point p?
+    public boolean contains(Point2D p) {
+        if (p == null) throw new IllegalArgumentException("Null argument to contains()");
+        int i = 0;
+        int s = size;
+        boolean vertical = true;
+        while (s > 0) {
+            double c = vertical ? p.x() : p.y();
+            double split = vertical ? x(i) : y(i);
+            int left = leftSize(i);
+            if (c < split) {
+                i = i + 1;
+                s = left;
+            } else {
+                if (x(i) == p.x() && y(i) == p.y()) {
+                    return true;
+                }
+                i = i + 1 + left;
+                s = s - 1 - left;
+            }
+            vertical = !vertical;
+        }
+        return false;
+    }
+
+    // all points that are inside the rectangle (or on the boundary)
+    public Iterable<Point2D> range(RectHV rect) {
+        if (rect == null)
+            throw new IllegalArgumentException("null argument to range()");
+        Queue<Point2D> pointsInRange = new Queue<>();
+        findRange(pointsInRange, rect, 0, size, true);
+        return pointsInRange;
+    }
+
+    // points below a node's coordinate are to its left, the rest to its right
+    private void findRange(Queue<Point2D> q, RectHV rect, int i, int s, boolean vertical) {
+        if (s == 0) {
+            return;
+        }
+        double x = x(i);
+        double y = y(i);
+        if (x >= rect.xmin() && x <= rect.xmax() && y >= rect.ymin() && y <= rect.ymax()) {
+            q.enqueue(new Point2D(x, y));
+        }
+        double split = vertical ? x : y;
+        int left = leftSize(i);
+        if ((vertical ? rect.xmin() : rect.ymin()) < split) {
+            findRange(q, rect, i + 1, left, !vertical);
+        }
+        if ((vertical ? rect.xmax() : rect.ymax()) >= split) {
+            findRange(q, rect, i + 1 + left, s - 1 - left, !vertical);
+        }
+    }
+
+    // a nearest neighbor in the set to point p; null if the set is empty
+    public Point2D nearest(Point2D p) {
+        if (p == null)
+            throw new IllegalArgumentException("null argument to nearest()");
+        if (size == 0) {
+            return null;
+        }
+        int best = findNearest(p.x(), p.y(), 0, size, true,
+                -INFINITY, -INFINITY, INFINITY, INFINITY, 0);
+        return new Point2D(x(best), y(best));
+    }
+
+    /* Returns the index of the closest point to (x, y) among the subtree of
+       s points at i and best, searching the side of the split the query is
+       on first, and the other side only if its rectangle is no farther than
+       the best point so far (see KdTree.findNearest()).
+     */
+    private int findNearest(double x, double y, int i, int s, boolean vertical,
+                            double xmin, double ymin, double xmax, double ymax, int best) {
+        if (s == 0) {
+            return best;
+        }
+        if (distanceSquared(i, x, y) < distanceSquared(best, x, y)) {
+            best = i;
+        }
+        int left = leftSize(i);
+        int lbIndex = i + 1;
+        int rtIndex = i + 1 + left;
+        int rtSize = s - 1 - left;
+        double split = vertical ? x(i) : y(i);
+        double leftXmax = vertical ? split : xmax;
+        double leftYmax = vertical ? ymax : split;
+        double rightXmin = vertical ? split : xmin;
+        double rightYmin = vertical ? ymin : split;
+        if ((vertical ? x : y) < split) {
+            best = findNearest(x, y, lbIndex, left, !vertical,
+                    xmin, ymin, leftXmax, leftYmax, best);
+            if (rectDistanceSquared(x, y, rightXmin, rightYmin, xmax, ymax)
+                    <= distanceSquared(best, x, y))
+                best = findNearest(x, y, rtIndex, rtSize, !vertical,
+                        rightXmin, rightYmin, xmax, ymax, best);
+        } else {
+            best = findNearest(x, y, rtIndex, rtSize, !vertical,
+                    rightXmin, rightYmin, xmax, ymax, best);
+            if (rectDistanceSquared(x, y, xmin, ymin, leftXmax, leftYmax)
+                    <= distanceSquared(best, x, y))
+                best = findNearest(x, y, lbIndex, left, !vertical,
+                        xmin, ymin, leftXmax, leftYmax, best);
+        }
+        return best;
+    }
+
+    private double distanceSquared(int i, double x, double y) {
+        double dx = x(i) - x;
+        double dy = y(i) - y;
+        return dx * dx + dy * dy;
+    }
+
+    // squared distance from (x, y) to the rectangle [xmin, xmax] x [ymin, ymax]
+    private static double rectDistanceSquared(double x, double y, double xmin, double ymin,
+                                              double xmax, double ymax) {
+        double dx = 0.0;
+        double dy = 0.0;
+        if (x < xmin) dx = x - xmin;
+        else if (x > xmax) dx = x - xmax;
+        if (y < ymin) dy = y - ymin;
+        else if (y > ymax) dy = y - ymax;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,272 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/20/18
+//
+// Static kd-tree over points with any number of coordinates, given as
+// double[] vectors. Laid out like FlatKdTree: the coordinates of point i
+// sit at [i * k, (i + 1) * k) of one flat array, and the subtree over index
+// range [lo, hi) has its root at mid = (lo + hi) / 2 and splits on
+// coordinate depth % k. Points may lie anywhere; the bounding box of the
+// data is computed once and bounds the nearest neighbor search.
+//
+// Points tying a node's coordinate can fall on either side of it, so
+// searches descend both ways on a tie.
+//*****************************************************************************
+
+import edu.princeton.cs.algs4.Queue;
+
+import java.util.Arrays;
+
+public class VectorKdTree {
+    private final int k;                // dimension
+    private final double[] coords;
+    private final int size;
+    private final double[] min;         // bounding box of the points
+    private final double[] max;
+
+    // construct the set of the given points, all of dimension k
+    public VectorKdTree(double[][] points, int k) {
+        if (points == null) throw new IllegalArgumentException("Null argument to VectorKdTree()");
+        if (k < 1) throw new IllegalArgumentException("Dimension must be positive.");
+        this.k = k;
+        double[][] a = points.clone();
+        for (double[] p : a) {
+            checkPoint(p);
+        }
+
+        // drop repeated points
+        Arrays.sort(a, VectorKdTree::compare);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (n == 0 || compare(a[i], a[n - 1]) != 0) {
+                a[n++] = a[i];
+            }
+        }
+        size = n;
+        coords = new double[n * k];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, coords, i * k, k);
+        }
+
+        min = new double[k];
+        max = new double[k];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < n * k; i++) {
+            min[i % k] = Math.min(min[i % k], coords[i]);
+            max[i % k] = Math.max(max[i % k], coords[i]);
+        }
+        build(0, n, 0);
+    }
+
+    private void checkPoint(double[] p) {
+        if (p == null) throw new IllegalArgumentException("Null point.");
+        if (p.length != k) {
+            throw new IllegalArgumentException("Point of dimension " + p.length
+                    + ", expected " + k);
+        }
+        for (double c : p) {
+            if (Double.isNaN(c)) throw new IllegalArgumentException("NaN coordinate.");
+        }
+    }
+
+    // lexicographic order on the coordinates
+    private static int compare(double[] p, double[] q) {
+        for (int i = 0; i < p.length; i++) {
+            int cmp = Double.compare(p[i], q[i]);
+            if (cmp != 0) return cmp;
+        }
+        return 0;
+    }
+
+    // is the set empty?
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimension() {
+        return k;
+    }
+
+    // puts the median of [lo, hi) by the axis coordinate at the middle
+    private void build(int lo, int hi, int axis) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        int next = (axis + 1 == k) ? 0 : axis + 1;
+        build(lo, mid, next);
+        build(mid + 1, hi, next);
+    }
+
+    // quickselect with 3-way partitioning on coordinate axis: the point of
+    // rank r in [lo, hi] ends up at r
+    private void select(int lo, int hi, int r, int axis) {
+        while (lo < hi) {
+            double pivot = coords[(lo + (hi - lo) / 2) * k + axis];
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double c = coords[i * k + axis];
+                if (c < pivot) exchange(lt++, i++);
+                else if (c > pivot) exchange(i, gt--);
+                else i++;
+            }
+            if (r < lt) hi = lt - 1;
+            else if (r > gt) lo = gt + 1;
+            else return;
+        }
+    }
+
+    private void exchange(int i, int j) {
+        for (int d = 0; d < k; d++) {
+            double swap = coords[i * k + d];
+            coords[i * k + d] = coords[j * k + d];
+            coords[j * k + d] = swap;
+        }
+    }
+
+    // does the set contain point p?
+    public boolean contains(double[] p) {
+        checkPoint(p);
+        return contains(0, size, 0, p);
+    }
+
+    private boolean contains(int lo, int hi, int axis, double[] p) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (equalsPoint(mid, p)) {
+                return true;
+            }
+            double split = coords[mid * k + axis];
+            int next = (axis + 1 == k) ? 0 : axis + 1;
+            if (p[axis] < split) {
+                hi = mid;
+            } else if (p[axis] > split) {
+                lo = mid + 1;
+            } else {
+                // ties may sit on both sides
+                return contains(lo, mid, next, p) || contains(mid + 1, hi, next, p);
+            }
+            axis = next;
+        }
+        return false;
+    }
+
+    private boolean equalsPoint(int i, double[] p) {
+        for (int d = 0; d < k; d++) {
+            if (coords[i * k + d] != p[d]) return false;
+        }
+        return true;
+    }
+
+    // all points in the box [lo[d], hi[d]] over every coordinate d, as new
+    // arrays
+    public Iterable<double[]> range(double[] lo, double[] hi) {
+        checkPoint(lo);
+        checkPoint(hi);
+        Queue<double[]> pointsInRange = new Queue<>();
+        findRange(pointsInRange, lo, hi, 0, size, 0);
+        return pointsInRange;
+    }
+
+    private void findRange(Queue<double[]> q, double[] lo, double[] hi,
+                           int from, int to, int axis) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        boolean inside = true;
+        for (int d = 0; d < k && inside; d++) {
+            double c = coords[mid * k + d];
+            inside = c >= lo[d] && c <= hi[d];
+        }
+        if (inside) {
+            q.enqueue(point(mid));
+        }
+
+        // the left side holds coordinates <= split, the right side >= split
+        double split = coords[mid * k + axis];
+        int next = (axis + 1 == k) ? 0 : axis + 1;
+        if (lo[axis] <= split) {
+            findRange(q, lo, hi, from, mid, next);
+        }
+        if (hi[axis] >= split) {
+            findRange(q, lo, hi, mid + 1, to, next);
+        }
+    }
+
+    // a nearest neighbor in the set to point p, as a new array; null if the
+    // set is empty
+    public double[] nearest(double[] p) {
+        checkPoint(p);
+        if (size == 0) {
+            return null;
+        }
+
+        // offset[d] is the distance from p to the current region along d,
+        // starting from the region of the root, the data's bounding box
+        double[] offset = new double[k];
+        double regionDistance = 0.0;
+        for (int d = 0; d < k; d++) {
+            if (p[d] < min[d]) offset[d] = min[d] - p[d];
+            else if (p[d] > max[d]) offset[d] = p[d] - max[d];
+            regionDistance += offset[d] * offset[d];
+        }
+        return point(findNearest(p, offset, regionDistance, 0, size, 0, 0));
+    }
+
+    /* Returns the index of the closest point to p among [lo, hi) and best.
+       Searches the side of the split p is on first. The other side's region
+       is that of the node cut at the split, so only its offset along the
+       axis changes, to the distance from p to the split line; the squared
+       distance to the region is updated for that one axis, and the side is
+       searched only if it is no farther than the best point so far.
+     */
+    private int findNearest(double[] p, double[] offset, double regionDistance,
+                            int lo, int hi, int axis, int best) {
+        if (lo >= hi) {
+            return best;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (distanceSquared(mid, p) < distanceSquared(best, p)) {
+            best = mid;
+        }
+        int next = (axis + 1 == k) ? 0 : axis + 1;
+        double diff = p[axis] - coords[mid * k + axis];
+        int nearLo = (diff < 0) ? lo : mid + 1;
+        int nearHi = (diff < 0) ? mid : hi;
+        int farLo = (diff < 0) ? mid + 1 : lo;
+        int farHi = (diff < 0) ? hi : mid;
+
+        best = findNearest(p, offset, regionDistance, nearLo, nearHi, next, best);
+        double oldOffset = offset[axis];
+        double farDistance = regionDistance - oldOffset * oldOffset + diff * diff;
+        if (farDistance <= distanceSquared(best, p)) {
+            offset[axis] = Math.abs(diff);
+            best = findNearest(p, offset, farDistance, farLo, farHi, next, best);
+            offset[axis] = oldOffset;
+        }
+        return best;
+    }
+
+    private double distanceSquared(int i, double[] p) {
+        double sum = 0.0;
+        for (int d = 0; d < k; d++) {
+            double diff = coords[i * k + d] - p[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private double[] point(int i) {
+        return Arrays.copyOfRange(coords, i * k, (i + 1) * k);
+    }
+}
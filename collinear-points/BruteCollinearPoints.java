@@ -4,108 +4,97 @@
 // Date: 10/14/18
 //
 // Finds all line segments with 4 or more collinear points via brute force
-// check of all possible sets of 4.
+// check of the sets of points, kept simple as a reference for the faster
+// versions. The points are sorted first, so a repeated point sits next to
+// its copy. From each point p, the slopes to all points are computed once;
+// then for every later point q the other points r are checked against the
+// slope of p and q, skipping r right away when p, q, r are not collinear.
+// If 2 more points are on the line, its min and max point are recorded.
+// Each line is recorded from many (p, q) pairs, so the records are sorted
+// and repeats dropped at the end. O(n^3) overall.
 //*****************************************************************************
 
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 public class BruteCollinearPoints {
-    private int totalSegments;
-    private ArrayList<endPointPair> pairs;
-    private final Point[] pointsCpy;
     private final LineSegment[] segmentsFinal;
 
     public BruteCollinearPoints(Point[] points) {
-        // finds all line segments containing 4 points
+        // finds all line segments containing 4 or more points
 
         // check for null array, null points, repeated points
 
         if (points == null)
             throw new IllegalArgumentException("Null points array.");
-
-
-        int n = points.length;
-        pointsCpy = new Point[n];
-        for (int i = 0; i < n; i++) {
-            pointsCpy[i] = points[i];
-        }
         for (int i = 0; i < points.length; i++) {
             if (points[i] == null) {
                 throw new IllegalArgumentException("Null point in points.");
             }
         }
 
-        for (int i = 0; i < points.length; i++) {
-            for (int j = 0; j < points.length; j++) {
-                if (points[j].compareTo(points[i]) == 0 && j != i)
-                    throw new IllegalArgumentException("Repeated point in array.");
-            }
+        Point[] pointsCpy = points.clone();
+        Arrays.sort(pointsCpy);
+        for (int i = 0; i < pointsCpy.length - 1; i++) {
+            if (pointsCpy[i].compareTo(pointsCpy[i + 1]) == 0)
+                throw new IllegalArgumentException("Repeated point in array.");
         }
 
-        pairs = new ArrayList<>();
-        totalSegments = 0;
-
-        // Iterate through points, checking each possible set of 4
-        for (int p = 0; p < pointsCpy.length; p++) {
-            for (int q = p + 1; q < pointsCpy.length; q++) {
-                for (int r = q + 1; r < pointsCpy.length; r++) {
-                    for (int s = r + 1; s < pointsCpy.length; s++) {
-                        if (pointsCpy[p].slopeTo(pointsCpy[q]) ==
-                                pointsCpy[p].slopeTo(pointsCpy[r]) &&
-                                pointsCpy[p].slopeTo(pointsCpy[r]) ==
-                                        pointsCpy[p].slopeTo(pointsCpy[s])) {
-
-
-                            // Find highest, lowest y values between these 4 points,
-                            // these are endpoints
-                            Point[] lineSegment = new Point[]
-                                    {pointsCpy[p], pointsCpy[q], pointsCpy[r], pointsCpy[s]};
-                            Point max = pointsCpy[p];
-                            Point min = pointsCpy[p];
-                            for (int i = 0; i < lineSegment.length - 1; i++) {
-                                if (max.compareTo(lineSegment[i + 1]) < 0) {
-                                    max = lineSegment[i + 1];
-                                } else if (min.compareTo(lineSegment[i + 1]) > 0) {
-                                    min = lineSegment[i + 1];
-                                }
-                            }
-
-                            // If this line segment's slopeTo another line segment's max and min are same, part of
-                            // that line segment as well
-                            boolean partOfExistingSegment = false;
-                            for (int i = 0; i < pairs.size(); i++) {
-                                Point endPointMax = pairs.get(i).max;
-                                Point endPointMin = pairs.get(i).min;
-                                if (min.slopeTo(endPointMax) ==
-                                        endPointMax.slopeTo(endPointMin) && max.slopeTo(endPointMin) == endPointMin.slopeTo(endPointMax)) {
-                                    partOfExistingSegment = true;
-                                    if (max.compareTo(endPointMax) > 0)
-                                        pairs.get(i).max = max;
-                                    if (min.compareTo(endPointMin) < 0)
-                                        pairs.get(i).min = min;
-                                }
-                            }
-                            if (!partOfExistingSegment) {
-                                pairs.add(new endPointPair(min, max));
-                                totalSegments++;
-                            }
-                        }
+        int n = pointsCpy.length;
+        double[] slopes = new double[n];
+        // (min index << 32) | max index of every line found
+        long[] lines = new long[16];
+        int lineCount = 0;
 
+        for (int p = 0; p < n; p++) {
+            for (int i = 0; i < n; i++) {
+                slopes[i] = pointsCpy[p].slopeTo(pointsCpy[i]);
+            }
+            for (int q = p + 1; q < n; q++) {
+                double slope = slopes[q];
+                int min = p;
+                int max = q;
+                int count = 2;
+                boolean checked = false;
+                for (int r = 0; r < n && !checked; r++) {
+                    if (r == p || r == q || slopes[r] != slope) {
+                        continue;
+                    }
+                    if (r > p && r < q) {
+                        // the line was already checked from p and r
+                        checked = true;
                     }
+                    count++;
+                    min = Math.min(min, r);
+                    max = Math.max(max, r);
                 }
+                if (!checked && count >= 4) {
+                    if (lineCount == lines.length) {
+                        lines = Arrays.copyOf(lines, 2 * lineCount);
+                    }
+                    lines[lineCount++] = ((long) min << 32) | max;
+                }
+            }
+        }
+
+        // drop the repeats, which are now next to each other
+        Arrays.sort(lines, 0, lineCount);
+        int totalSegments = 0;
+        for (int i = 0; i < lineCount; i++) {
+            if (i == 0 || lines[i] != lines[i - 1]) {
+                lines[totalSegments++] = lines[i];
             }
         }
         segmentsFinal = new LineSegment[totalSegments];
         for (int i = 0; i < totalSegments; i++) {
-            segmentsFinal[i] = new LineSegment(pairs.get(i).min,
-                    pairs.get(i).max);
+            segmentsFinal[i] = new LineSegment(pointsCpy[(int) (lines[i] >>> 32)],
+                    pointsCpy[(int) lines[i]]);
         }
     }
 
     public int numberOfSegments() {
         // the number of line segments
-        return totalSegments;
+        return segmentsFinal.length;
     }
 
     public LineSegment[] segments() {
@@ -115,15 +104,4 @@ public class BruteCollinearPoints {
         }
         return segCopy;
     }
-
-    private class endPointPair {
-        private Point min;
-        private Point max;
-
-        public endPointPair(Point min, Point max) {
-            this.min = min;
-            this.max = max;
-        }
-
-    }
 }
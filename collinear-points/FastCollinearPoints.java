@@ -5,36 +5,43 @@
 //
 // Finds all line segments with 4 or more collinear points by sorting points first
 // by natural order, then sorting all points by their respective slopes to i, where
-// i is an incrementing pointer to the points array. I deal with line segments by
-// keeping the status of min point and telling whether it is already in a vertical
-// or horizontal line segment in a byte array. I also use a hashtable to store
-// lines that the min point is already in.
+// i is an incrementing pointer to the points array. Every point of a segment
+// finds the whole segment as its anchor, so a segment is only kept when the
+// anchor is its min point; each segment is then found exactly once and no
+// lookup of the segments found so far is needed.
+//
+// Each anchor's search only reads the points, so in parallel mode ranges of
+// anchors are searched as fork-join tasks, each with its own copy of the
+// points and slope array. Their segments are joined in anchor order, so the
+// output is the same as the sequential search's.
 //*****************************************************************************
 
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class FastCollinearPoints {
-    private int totalSegments;
-    private final ArrayList<LineSegment> segments;
     private final LineSegment[] segmentsFinal;
-    private byte[] pointInLineStatus;
-    private Node[] connections;
     private final Point[] pointsCpy;
 
-    private class Node {
-        public Point connection;
-        public Node next;
-    }
+    // ranges of fewer anchors than this are searched by a single task
+    private static final int ANCHORS_PER_TASK = 64;
 
     public FastCollinearPoints(Point[] points) {
         // finds all line segments containing 4 or more points
+        this(points, false);
+    }
+
+    public FastCollinearPoints(Point[] points, boolean parallel) {
+        // finds all line segments containing 4 or more points, searching
+        // the anchors in parallel if asked to
 
         if (points == null)
             throw new IllegalArgumentException("Null points array.");
 
-        totalSegments = 0;
         int n = points.length;
         pointsCpy = new Point[n];
 
@@ -60,112 +67,95 @@ public class FastCollinearPoints {
         }
 
 
-        connections = new Node[points.length];
-        pointInLineStatus = new byte[points.length];
-        double[] slopeToP = new double[points.length];
-        segments = new ArrayList<>();
+        Point[] pointsClone = pointsCpy.clone();
 
-        // check for repeated point and null point
-        for (int i = 0; i < pointsCpy.length - 1; i++) {
-            if (points[i] == null) {
-                throw new IllegalArgumentException("Null point in points array");
-            } else if (points[i].compareTo(points[i + 1]) == 0) {
-                throw new IllegalArgumentException("Repeated point in points array.");
-            }
-        }
-        if (points[points.length - 1] == null) {
-            throw new IllegalArgumentException("Null point in points array");
+        List<LineSegment> segments;
+        if (parallel) {
+            segments = ForkJoinPool.commonPool().invoke(
+                    new SearchTask(pointsClone, 0, pointsClone.length));
+        } else {
+            segments = search(pointsClone, 0, pointsClone.length);
         }
+        segmentsFinal = segments.toArray(new LineSegment[0]);
+    }
 
-        Point[] pointsClone = pointsCpy.clone();
+    // the segments whose min point is one of the anchors sorted[lo, hi),
+    // in anchor order, using private scratch arrays
+    private static List<LineSegment> search(Point[] sorted, int lo, int hi) {
+        Point[] pointsCpy = sorted.clone();
+        double[] slopeToP = new double[sorted.length];
+        List<LineSegment> found = new ArrayList<>();
 
-        for (int i = 0; i < pointsCpy.length; i++) {
+        for (int i = lo; i < hi; i++) {
             // sort array in order of  slope to points[i]
-            Point p = pointsClone[i];
+            Point p = sorted[i];
             Arrays.sort(pointsCpy, p.slopeOrder());
             int pointsInSegment = 0;
             slopeToP[0] = pointsCpy[0].slopeTo(p);
 
-            for (int j = 1; j < points.length; j++) {
+            for (int j = 1; j < pointsCpy.length; j++) {
                 // If left point slope to p equals this point slope to p
                 slopeToP[j] = pointsCpy[j].slopeTo(p);
                 if (slopeToP[j] == slopeToP[j - 1]) {
                     pointsInSegment++;
                 } else {
                     if (pointsInSegment >= 2) {
-                        Arrays.sort(pointsCpy, (j - 1) - pointsInSegment, j);
-                        //Add lineseg
-                        Point min = (p.compareTo(pointsCpy[(j - 1) - pointsInSegment]) < 0)
-                                ? p : pointsCpy[j - 1 - pointsInSegment];
-                        Point max = (p.compareTo(pointsCpy[j - 1]) > 0)
-                                ? p : pointsCpy[j - 1];
-                        addSegment(Arrays.binarySearch(pointsClone, min), max,
-                                slopeToP[j - 1], min, max);
+                        addIfMin(found, p, pointsCpy, (j - 1) - pointsInSegment, j);
                     }
                     pointsInSegment = 0;
                 }
             }
             if (pointsInSegment >= 2) {
-                int j = pointsCpy.length - 1;
-                Arrays.sort(pointsCpy, j - pointsInSegment, pointsCpy.length);
-                Point min = (p.compareTo(pointsCpy[j - pointsInSegment]) < 0)
-                        ? p : pointsCpy[j - pointsInSegment];
-
-                Point max = (p.compareTo(pointsCpy[j]) > 0) ? p : pointsCpy[j];
-                addSegment(Arrays.binarySearch(pointsClone, min), max,
-                        slopeToP[j], min, max);
+                int j = pointsCpy.length;
+                addIfMin(found, p, pointsCpy, j - 1 - pointsInSegment, j);
             }
-
-        }
-        n = segments.size();
-        segmentsFinal = new LineSegment[n];
-        for (int i = 0; i < n; i++) {
-            segmentsFinal[i] = segments.get(i);
         }
-
+        return found;
     }
 
-    private void addSegment(int minOriginalPosition, Point maxPoint, double slope, Point min, Point max) {
-        // 01   indicates vertical line with point p
-        // 010  indicates horizontal line with point p
-        // 0100 indicates regular line with point p
+    // add the segment of p and the points in a[lo, hi), all collinear with
+    // p, if p is its min point; the max is then the largest of a[lo, hi)
+    private static void addIfMin(List<LineSegment> found, Point p, Point[] a, int lo, int hi) {
+        Point max = a[lo];
+        for (int k = lo; k < hi; k++) {
+            if (a[k].compareTo(p) < 0) {
+                return;
+            }
+            if (a[k].compareTo(max) > 0) {
+                max = a[k];
+            }
+        }
+        found.add(new LineSegment(p, max));
+    }
 
-        // if vertical line status stored in byte array at p and slope is vertical,
-        // discard (duplicate)
-        if ((pointInLineStatus[minOriginalPosition] & 1) == 1 && slope == Double.POSITIVE_INFINITY) return;
+    // searches a range of anchors, splitting it in half until it is small
+    private static class SearchTask extends RecursiveTask<List<LineSegment>> {
+        private final Point[] sorted;
+        private final int lo;
+        private final int hi;
 
-            // else if horizontal line status stored in byte array at p and slope is horizontal,
-            // discard (duplicate)
-        else if ((pointInLineStatus[minOriginalPosition] & 2) == 2 && slope == 0.0) return;
+        SearchTask(Point[] sorted, int lo, int hi) {
+            this.sorted = sorted;
+            this.lo = lo;
+            this.hi = hi;
+        }
 
-        //check if connected to max already by regular line
-        Node ptr = connections[minOriginalPosition];
-        while (ptr != null) {
-            if (ptr.connection == max)
-                return;
-            else {
-                ptr = ptr.next;
+        protected List<LineSegment> compute() {
+            if (hi - lo <= ANCHORS_PER_TASK) {
+                return search(sorted, lo, hi);
             }
+            int mid = (lo + hi) >>> 1;
+            SearchTask left = new SearchTask(sorted, lo, mid);
+            left.fork();
+            List<LineSegment> found = new SearchTask(sorted, mid, hi).compute();
+            List<LineSegment> merged = left.join();
+            merged.addAll(found);
+            return merged;
         }
-        segments.add(new LineSegment(min, max));
-        totalSegments++;
-        Node newNode = new Node();
-        newNode.connection = maxPoint;
-        newNode.next = connections[minOriginalPosition];
-        connections[minOriginalPosition] = newNode;
-
-        if (slope == Double.POSITIVE_INFINITY)
-            pointInLineStatus[minOriginalPosition] = (byte) (pointInLineStatus[minOriginalPosition] | 1);
-
-        else if (slope == 0.0)
-            pointInLineStatus[minOriginalPosition] = (byte) (pointInLineStatus[minOriginalPosition] | 2);
-        else
-            pointInLineStatus[minOriginalPosition] = (byte) (pointInLineStatus[minOriginalPosition] | 4);
     }
 
-
     public int numberOfSegments() {
-        return totalSegments;
+        return segmentsFinal.length;
     }
 
     public LineSegment[] segments() {
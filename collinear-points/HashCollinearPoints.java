@@ -0,0 +1,150 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Finds all line segments with 4 or more collinear points like
+// FastCollinearPoints, but groups the points around each anchor point by
+// hashing instead of sorting, in expected O(n^2) time overall. Slopes are
+// exact: the direction from the anchor to another point is the difference
+// (dx, dy) divided by its gcd and turned to point up (or right when
+// horizontal), packed into one long. Points on the same line through the
+// anchor, on either side of it, get the same key.
+//
+// Point has no coordinate accessors, so the coordinates are read back once
+// from Point.toString(), which the assignment fixes as "(x, y)".
+//*****************************************************************************
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class HashCollinearPoints {
+    private final LineSegment[] segmentsFinal;
+
+    // open addressing table from direction key to the points seen in that
+    // direction from the current anchor; a slot belongs to the current
+    // anchor only if its stamp matches, so it is never cleared
+    private long[] keys;
+    private int[] stamps;
+    private int[] counts;
+    private int[] maxIndex;         // the largest point in the direction
+    private int[] minIndex;         // the smallest point in the direction
+    private int[] used;             // slots filled for the current anchor
+    private int usedCount;
+
+    public HashCollinearPoints(Point[] points) {
+        // finds all line segments containing 4 or more points
+
+        if (points == null)
+            throw new IllegalArgumentException("Null points array.");
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] == null)
+                throw new IllegalArgumentException("Null point in points array");
+        }
+
+        // sort points by natural order, so along any line the points come
+        // in the order of their indices
+        Point[] pointsCpy = points.clone();
+        Arrays.sort(pointsCpy);
+        for (int i = 0; i < pointsCpy.length - 1; i++) {
+            if (pointsCpy[i].compareTo(pointsCpy[i + 1]) == 0) {
+                throw new IllegalArgumentException("Repeated point in points array.");
+            }
+        }
+
+        int n = pointsCpy.length;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            String s = pointsCpy[i].toString();
+            int comma = s.indexOf(',');
+            xs[i] = Integer.parseInt(s.substring(1, comma).trim());
+            ys[i] = Integer.parseInt(s.substring(comma + 1, s.length() - 1).trim());
+        }
+
+        int capacity = 16;
+        while (capacity < 2 * n) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        stamps = new int[capacity];
+        counts = new int[capacity];
+        maxIndex = new int[capacity];
+        minIndex = new int[capacity];
+        used = new int[n];
+
+        ArrayList<LineSegment> segments = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            usedCount = 0;
+            for (int j = 0; j < n; j++) {
+                if (j != i) {
+                    add(i + 1, direction(xs[j] - xs[i], ys[j] - ys[i]), j);
+                }
+            }
+            // report each segment once, from its smallest point
+            for (int u = 0; u < usedCount; u++) {
+                int slot = used[u];
+                if (counts[slot] >= 3 && minIndex[slot] > i) {
+                    segments.add(new LineSegment(pointsCpy[i], pointsCpy[maxIndex[slot]]));
+                }
+            }
+        }
+        segmentsFinal = segments.toArray(new LineSegment[0]);
+    }
+
+    // (dx, dy) reduced to lowest terms, pointing up or right, as a long
+    private static long direction(int dx, int dy) {
+        int g = gcd(Math.abs(dx), Math.abs(dy));
+        dx /= g;
+        dy /= g;
+        if (dy < 0 || (dy == 0 && dx < 0)) {
+            dx = -dx;
+            dy = -dy;
+        }
+        return ((long) dx << 32) | (dy & 0xFFFFFFFFL);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    // count point j in the direction key from the anchor with stamp stamp
+    private void add(int stamp, long key, int j) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (stamps[i] == stamp && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (stamps[i] != stamp) {
+            stamps[i] = stamp;
+            keys[i] = key;
+            counts[i] = 1;
+            minIndex[i] = j;
+            maxIndex[i] = j;
+            used[usedCount++] = i;
+        } else {
+            counts[i]++;
+            // the points are visited in index order
+            maxIndex[i] = j;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public int numberOfSegments() {
+        return segmentsFinal.length;
+    }
+
+    public LineSegment[] segments() {
+        return segmentsFinal.clone();
+    }
+}
@@ -0,0 +1,168 @@
+//*****************************************************************************
+// Author: Frederic Fladenmuller
+// Class: Princeton Algorithms, part 1
+// Date: 10/14/18
+//
+// Finds line segments with 4 or more collinear points as points arrive one
+// at a time, instead of searching a fixed array. When a point p is
+// inserted, the points already in the set are grouped by their slope to p;
+// a group holds every earlier point on one line through p. A group of 3
+// points makes a new segment with p, and a larger group already had a
+// segment, which p joins and may extend. So each insert takes expected
+// linear time, and only the segments through p change.
+//
+// Every point on a segment keeps an index from slope to the segment it is
+// on in that direction, so the existing segment of a group is found from
+// any one of its points. Points on no segment have no index.
+//*****************************************************************************
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class IncrementalCollinearPoints {
+    private final ArrayList<Point> points;
+    private final ArrayList<HashMap<Double, Line>> lines;   // per point, or null
+    private final ArrayList<Line> segments;
+    private final Listener listener;
+
+    // receives the segment changes made by each insert
+    public interface Listener {
+        // a new segment of exactly 4 points
+        void added(LineSegment segment);
+
+        // an existing segment grew past one of its end points
+        void extended(LineSegment before, LineSegment after);
+    }
+
+    private static class Line {
+        private Point min;
+        private Point max;
+
+        Line(Point min, Point max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        LineSegment segment() {
+            return new LineSegment(min, max);
+        }
+    }
+
+    // the earlier points on one line through the inserted point
+    private static class Group {
+        private int count;
+        private final int[] first = new int[3];
+    }
+
+    // an empty set of points, reporting no events
+    public IncrementalCollinearPoints() {
+        this(null);
+    }
+
+    // an empty set of points, reporting segment changes to listener
+    public IncrementalCollinearPoints(Listener listener) {
+        this.points = new ArrayList<>();
+        this.lines = new ArrayList<>();
+        this.segments = new ArrayList<>();
+        this.listener = listener;
+    }
+
+    // add p, updating the segments through it
+    public void insert(Point p) {
+        if (p == null)
+            throw new IllegalArgumentException("Null point.");
+
+        // group the earlier points by slope to p; slopeTo() is exact for
+        // points on one line, as it divides the same rational each time
+        HashMap<Double, Group> groups = new HashMap<>();
+        for (int i = 0; i < points.size(); i++) {
+            double slope = p.slopeTo(points.get(i));
+            if (slope == Double.NEGATIVE_INFINITY)
+                throw new IllegalArgumentException("Repeated point.");
+            Group group = groups.get(slope);
+            if (group == null) {
+                group = new Group();
+                groups.put(slope, group);
+            }
+            if (group.count < group.first.length) {
+                group.first[group.count] = i;
+            }
+            group.count++;
+        }
+
+        int index = points.size();
+        points.add(p);
+        lines.add(null);
+        for (Map.Entry<Double, Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            if (group.count == 3) {
+                addLine(entry.getKey(), index, group.first);
+            } else if (group.count > 3) {
+                extendLine(entry.getKey(), index, group.first[0]);
+            }
+        }
+    }
+
+    // a new segment of point index and the three points of others
+    private void addLine(double slope, int index, int[] others) {
+        Point min = points.get(index);
+        Point max = min;
+        for (int i : others) {
+            Point q = points.get(i);
+            if (q.compareTo(min) < 0) min = q;
+            if (q.compareTo(max) > 0) max = q;
+        }
+        Line line = new Line(min, max);
+        segments.add(line);
+        index(index, slope, line);
+        for (int i : others) {
+            index(i, slope, line);
+        }
+        if (listener != null) {
+            listener.added(line.segment());
+        }
+    }
+
+    // point index joins the segment that point member is on with slope
+    private void extendLine(double slope, int index, int member) {
+        Line line = lines.get(member).get(slope);
+        index(index, slope, line);
+        Point p = points.get(index);
+        if (p.compareTo(line.min) > 0 && p.compareTo(line.max) < 0) {
+            return;
+        }
+        LineSegment before = line.segment();
+        if (p.compareTo(line.min) < 0) line.min = p;
+        else line.max = p;
+        if (listener != null) {
+            listener.extended(before, line.segment());
+        }
+    }
+
+    private void index(int i, double slope, Line line) {
+        if (lines.get(i) == null) {
+            lines.set(i, new HashMap<>());
+        }
+        lines.get(i).put(slope, line);
+    }
+
+    // number of points inserted so far
+    public int size() {
+        return points.size();
+    }
+
+    public int numberOfSegments() {
+        return segments.size();
+    }
+
+    // the maximal segments of the points inserted so far
+    public LineSegment[] segments() {
+        LineSegment[] segCopy = new LineSegment[segments.size()];
+        for (int i = 0; i < segCopy.length; i++) {
+            segCopy[i] = segments.get(i).segment();
+        }
+        return segCopy;
+    }
+}